@@ -25,6 +25,10 @@ class S21(object):
             self.center = float(fin.readline().split()[-1]) # MHz
             self.span = float(fin.readline().split()[-1]) # kHz
             self.ref = False if float(fin.readline().split()[-1]) < 0 else True
+            self.measurements = ["S21"]
+            for line in fin:
+                if line.startswith("# type of measurement"):
+                    self.measurements = line.split()[-1].split(',') # columns of the traces in this order
 
     def transmission_trace(self, coord=[0, 0], ref=False):
         '''
@@ -34,7 +38,9 @@ class S21(object):
             print("Error: no references were measured.")
             raise SystemExit
         fname = ('/').join(self.path) + "/{:d}_{:03d}_{:03d}.dat".format(not ref, coord[0], coord[1])
-        real, imag = np.genfromtxt(fname, unpack=True)
+        k = next((k for k, m in enumerate(self.measurements) if m in ("S21", "S12")), 0)
+        data = np.genfromtxt(fname, ndmin=2) # real, imaginary of every measurement
+        real, imag = data[:, 2*k], data[:, 2*k+1]
         amp = real**2 + imag**2
         exp = -np.floor(np.log10(amp)).max()
         amp *= np.power(10, exp)
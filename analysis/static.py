@@ -13,13 +13,14 @@ class S_Parameter(object):
         '''
         load settings from slow_control.dat
         '''
-        if isinstance(path, str): # transmission
+        if isinstance(path, str): # transmission, or reflections taken together
             self.path = path.split('/')
             with open(path + "/slow_control.dat") as fin:
                 self.n_repeat = int(fin.readline().split()[-1])
                 self.n_sample = int(fin.readline().split()[-1])
                 self.center = float(fin.readline().split()[-1]) # MHz
                 self.span = float(fin.readline().split()[-1]) # kHz
+            self.measurements = self.measurement_types(path)
         else: # reflection
             self.path = [path[0].split('/'), path[1].split('/')]
             self.n_repeat = []
@@ -27,6 +28,25 @@ class S_Parameter(object):
                 self.n_repeat.append(int(fin.readline().split()[-1]))
             with open(path[1] + "/slow_control.dat") as fin:
                 self.n_repeat.append(int(fin.readline().split()[-1]))
+            self.measurements = [self.measurement_types(path[0]), self.measurement_types(path[1])]
+
+    def measurement_types(self, path):
+        '''
+        s-parameters in the order of the columns of the traces, two columns each
+        '''
+        with open(path + "/slow_control.dat") as fin:
+            for line in fin:
+                if line.startswith("# type of measurement"):
+                    return line.split()[-1].split(',')
+        return ["S21"]
+
+    def measurement_trace(self, fname, measurements, types):
+        '''
+        complex trace of the first of the given s-parameters, or of the first column if none was measured
+        '''
+        k = next((k for k, m in enumerate(measurements) if m in types), 0)
+        data = np.genfromtxt(fname, ndmin=2)
+        return data[:, 2*k] + 1j * data[:, 2*k+1]
 
     def transmission_trace(self, fno=0):
         '''
@@ -36,8 +56,7 @@ class S_Parameter(object):
             print("Error: type mismatch! This is for transmission measurement.")
             raise SystemExit
         fname = ('/').join(self.path) + "/{:05d}.dat".format(fno)
-        real, imag = np.genfromtxt(fname, unpack=True)
-        amp = real**2 + imag**2
+        amp = np.absolute(self.measurement_trace(fname, self.measurements, ("S21", "S12")))**2
         exp = -np.floor(np.log10(amp)).max()
         amp *= np.power(10, exp)
         err = amp * 3e-2 * np.log(10)
@@ -46,15 +65,20 @@ class S_Parameter(object):
 
     def reflection_circles(self, fno=[0, 0]):
         '''
-        rebuild data points in a reflection circle
-        '''
-        if not isinstance(self.path[0], list):
+        rebuild data points in a reflection circle, from two tests or from one which took S11 and S22 together
+        '''
+        if isinstance(self.path[0], list):
+            fname = ('/').join(self.path[0]) + "/{:05d}.dat".format(fno[0])
+            s11 = self.measurement_trace(fname, self.measurements[0], ("S11", "S22"))
+            fname = ('/').join(self.path[1]) + "/{:05d}.dat".format(fno[1])
+            s22 = self.measurement_trace(fname, self.measurements[1], ("S22", "S11"))
+        elif "S11" in self.measurements and "S22" in self.measurements:
+            fname = ('/').join(self.path) + "/{:05d}.dat".format(fno[0])
+            s11 = self.measurement_trace(fname, self.measurements, ("S11",))
+            s22 = self.measurement_trace(fname, self.measurements, ("S22",))
+        else:
             print("Error: type mismatch! This is for reflection measurement.")
             raise SystemExit
-        fname = ('/').join(self.path[0]) + "/{:05d}.dat".format(fno[0])
-        s11 = np.genfromtxt(fname, dtype="f8").flatten().view(dtype="c16")
-        fname = ('/').join(self.path[1]) + "/{:05d}.dat".format(fno[1])
-        s22 = np.genfromtxt(fname, dtype="f8").flatten().view(dtype="c16")
         return np.vstack((s11, s22))
 
     def resonant_curve(self, f, f0, df, c):
@@ -113,12 +137,17 @@ class S_Parameter(object):
         plt.close("all")
         fig, ax = plt.subplots(subplot_kw=dict(polar=True))
         reflt = self.reflection_circles(fno)
-        ax.plot(np.angle(reflt[0]), np.absolute(reflt[0]), linewidth=2, label=r"$S_{%s}$" % self.path[0][-1][1:])
-        ax.plot(np.angle(reflt[1]), np.absolute(reflt[1]), linewidth=2, label=r"$S_{%s}$" % self.path[1][-1][1:])
+        together = isinstance(self.path[0], str)
+        labels = ["11", "22"] if together else [self.path[0][-1][1:], self.path[1][-1][1:]]
+        ax.plot(np.angle(reflt[0]), np.absolute(reflt[0]), linewidth=2, label=r"$S_{%s}$" % labels[0])
+        ax.plot(np.angle(reflt[1]), np.absolute(reflt[1]), linewidth=2, label=r"$S_{%s}$" % labels[1])
         ax.set_rmax(1.01)
         ax.legend(loc="center left")
         if save:
-            fname = "static_" + self.path[0][-3] + '_' + self.path[0][-1] + "_{:05d}".format(fno[0]) + '_' + self.path[1][-1] + "_{:05d}".format(fno[1])
+            if together:
+                fname = "static_" + self.path[-3] + '_' + self.path[-1] + "_{:05d}".format(fno[0])
+            else:
+                fname = "static_" + self.path[0][-3] + '_' + self.path[0][-1] + "_{:05d}".format(fno[0]) + '_' + self.path[1][-1] + "_{:05d}".format(fno[1])
             self.save_to_file(fname)
         plt.show()
 
@@ -137,14 +166,17 @@ if __name__ == "__main__":
     path += cavity[cav[0]] + "/static/"
     subd = input("please specify the subdirectory(ies) (use comma to separate if two are given): ")
 
-    if ',' not in subd: # transmission
+    if ',' not in subd: # transmission, or S11 and S22 taken together
         path += subd
         s_para = S_Parameter(path)
         n = s_para.n_repeat
         fno = 0
         if n > 1:
             fno = int(input("please specify the file number (less than {:d}): ".format(n)))
-        s_para.plot_transmission(fno, save=True)
+        if "S21" in s_para.measurements or "S12" in s_para.measurements:
+            s_para.plot_transmission(fno, save=True)
+        else:
+            s_para.plot_reflection([fno, fno], save=True)
     else: # reflection
         subd = subd.split(',')
         s_para = S_Parameter([path+subd[0].strip(), path+subd[1].strip()])
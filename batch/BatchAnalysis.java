@@ -0,0 +1,283 @@
+/* This program fits the resonance of every trace of finished tests again, on all cores, and writes a compact table per test, such that a whole campaign is reprocessed in seconds.
+ *
+ * All Copyleft Reserved!
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+import java.util.stream.*;
+
+public class BatchAnalysis {
+    static int threads = Runtime.getRuntime().availableProcessors();
+    static int threshold = 16; // traces fitted by a single task at most
+    static String output = "batch.dat"; // table in the directory of every test
+    static final Pattern dynamicName = Pattern.compile("(\\d)_(\\d{3})_(\\d{3})\\.dat"); // indicator, X index, Z index
+    static final Pattern staticName = Pattern.compile("(\\d{5})\\.dat"); // repetition
+
+    public static void main(String[] args) {
+        List<Path> roots = new ArrayList<Path>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-j"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-o"))
+                    output = args[++i];
+                else if (args[i].startsWith("-"))
+                    throw new IllegalArgumentException();
+                else
+                    roots.add(Paths.get(args[i]));
+            }
+            if (threads < 1)
+                throw new IllegalArgumentException();
+        } catch (RuntimeException e) {
+            printHelp();
+            System.exit(1);
+        }
+        if (roots.isEmpty())
+            roots.add(Paths.get("."));
+
+        // every directory with a slow_control.dat holds a test, the ones of a campaign included
+        TreeSet<Path> tests = new TreeSet<Path>();
+        for (Path root : roots) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(p -> p.getFileName() != null && p.getFileName().toString().equals("slow_control.dat"))
+                        .forEach(p -> tests.add(p.getParent() == null ? Paths.get(".") : p.getParent()));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error! Couldn't search directory `" + root + "'.");
+                System.exit(1);
+            }
+        }
+        if (tests.isEmpty()) {
+            System.err.println("Error! There is no slow_control.dat below the given directories.");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        int total = 0;
+        for (Path dir : tests) {
+            long begin = System.nanoTime();
+            Test test = new Test(dir);
+            if (!test.vna.Transmission()) {
+                System.out.println(String.format("%s: no transmission to fit", dir));
+                continue;
+            }
+            pool.invoke(new Fit(test, 0, test.Size()));
+            test.Write(dir.resolve(output));
+            total += test.Size();
+            System.out.println(String.format("%s: %d traces from %s fitted in %.2f s, %d fits failed", dir, test.Size(),
+                    test.archive != null ? "traces.arc" : "text files", (System.nanoTime() - begin) * 1e-9, test.failed));
+        }
+        pool.shutdown();
+        System.out.println(String.format("%d traces of %d tests in %.2f s with %d threads", total, tests.size(), (System.nanoTime() - start) * 1e-9, threads));
+    }
+
+    // traces of a test, either the records of its archive or its text files, in the order of the table
+    static class Test {
+        Path dir;
+        String settings = "";
+        VectorNetworkAnalyzer.Config vna = new VectorNetworkAnalyzer.Config();
+        TraceArchive.Reader archive = null;
+        long[] records; // latest record of every indicator and grid point, for the archive
+        Path[] files; // for text output
+        int[][] labels; // indicator, X index, Z index
+        double[] temperatures; // from the header of every text file, NaN if it has none
+        String[] results; // line of the table per trace
+        int failed = 0; // counted under the lock of the test
+
+        Test(Path dir) {
+            this.dir = dir;
+            Settings(dir.resolve("slow_control.dat"));
+            Path arc = dir.resolve("traces.arc");
+            try {
+                if (Files.exists(arc)) {
+                    archive = new TraceArchive.Reader(arc.toString());
+                    TreeMap<Long, Long> latest = new TreeMap<Long, Long>(); // sorted by indicator, X index, Z index
+                    for (long n = 0; n < archive.Size(); n++)
+                        latest.put(TraceArchive.Reader.Key(archive.Indicator(n), archive.XIndex(n), archive.ZIndex(n)), n);
+                    records = new long[latest.size()];
+                    labels = new int[latest.size()][];
+                    int k = 0;
+                    for (long n : latest.values()) {
+                        records[k] = n;
+                        labels[k++] = new int[] {archive.Indicator(n), archive.XIndex(n), archive.ZIndex(n)};
+                    }
+                } else {
+                    TreeMap<Long, Path> named = new TreeMap<Long, Path>();
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.dat")) {
+                        for (Path p : stream) {
+                            Matcher d = dynamicName.matcher(p.getFileName().toString());
+                            Matcher s = staticName.matcher(p.getFileName().toString());
+                            if (d.matches())
+                                named.put(TraceArchive.Reader.Key(Integer.parseInt(d.group(1)), Integer.parseInt(d.group(2)), Integer.parseInt(d.group(3))), p);
+                            else if (s.matches())
+                                named.put(TraceArchive.Reader.Key(0, Integer.parseInt(s.group(1)), 0), p); // as in the archive
+                        }
+                    }
+                    files = named.values().toArray(new Path[0]);
+                    temperatures = new double[files.length];
+                    labels = new int[files.length][];
+                    int k = 0;
+                    for (long key : named.keySet())
+                        labels[k++] = new int[] {(int) (key >>> 42), (int) (key >>> 21) & 0x1fffff, (int) key & 0x1fffff};
+                }
+            } catch (IOException e) {
+                System.err.println("Error! Couldn't read the traces in `" + dir + "'.");
+                System.exit(1);
+            }
+            results = new String[labels.length];
+        }
+
+        int Size() {
+            return labels.length;
+        }
+
+        // analyzer settings from the header
+        void Settings(Path fname) {
+            StringBuilder header = new StringBuilder();
+            try (BufferedReader reader = Files.newBufferedReader(fname, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("#")) {
+                        String value = line.length() > 43 ? line.substring(43).trim() : "";
+                        if (line.startsWith("# number of trace points"))
+                            vna.point = Integer.parseInt(value);
+                        else if (line.startsWith("# center frequency [MHz]"))
+                            vna.center = Double.parseDouble(value);
+                        else if (line.startsWith("# span [kHz]"))
+                            vna.span = Double.parseDouble(value);
+                        else if (line.startsWith("# type of measurement"))
+                            vna.measurement = value;
+                        else if (line.startsWith("# date time"))
+                            continue; // columns of the log
+                        header.append(line).append('\n');
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error! Couldn't read file `" + fname + "'.");
+                System.exit(1);
+            }
+            settings = header.toString();
+        }
+
+        // interleaved real and imaginary parts of all measurements of a line, one measurement after another;
+        // the temperature is taken from the header, files written before it had one are left without
+        double[] Load(int k) throws IOException {
+            byte[] bytes = Files.readAllBytes(files[k]);
+            int m = vna.Measurements().length;
+            double[] values = new double[2 * m * vna.point];
+            int count = 0, begin = -1, start = 0;
+            temperatures[k] = Double.NaN;
+            while (start < bytes.length && bytes[start] == '#') {
+                int end = start;
+                while (end < bytes.length && bytes[end] != '\n')
+                    end++;
+                String line = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+                if (line.startsWith("# temperature [deg C]"))
+                    temperatures[k] = Double.parseDouble(line.substring(43).trim());
+                start = end + 1;
+            }
+            for (int i = start; i <= bytes.length; i++) {
+                boolean space = i == bytes.length || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == ' ' || bytes[i] == '\r';
+                if (!space && begin < 0)
+                    begin = i;
+                else if (space && begin >= 0) {
+                    if (count == values.length)
+                        throw new IOException("more values than the settings allow");
+                    values[count++] = Double.parseDouble(new String(bytes, begin, i - begin, StandardCharsets.US_ASCII));
+                    begin = -1;
+                }
+            }
+            int n = count / 2 / m;
+            double[] data = new double[2 * m * n];
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < m; j++) {
+                    data[2*(j*n + i)] = values[2*(i*m + j)];
+                    data[2*(j*n + i) + 1] = values[2*(i*m + j) + 1];
+                }
+            return data;
+        }
+
+        void Write(Path fname) {
+            try (BufferedWriter f = Files.newBufferedWriter(fname, StandardCharsets.UTF_8)) {
+                f.write(settings);
+                f.write("# indicator, X index, Z index, " + ResonanceFitter.Columns() + ", temperature [deg C]\n");
+                for (String line : results)
+                    f.write(line);
+            } catch (IOException e) {
+                System.err.println("Error! Couldn't write to file `" + fname + "'.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // halves the range until it is small enough, then loads and fits it with a fitter of its own
+    static class Fit extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        Test test;
+        int from, to;
+
+        Fit(Test test, int from, int to) {
+            this.test = test;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > threshold) {
+                int middle = (from + to) / 2;
+                invokeAll(new Fit(test, from, middle), new Fit(test, middle, to));
+                return;
+            }
+
+            ResonanceFitter fitter = new ResonanceFitter();
+            VectorNetworkAnalyzer.Config vna = test.vna;
+            int m = vna.Measurements().length;
+            for (int k = from; k < to; k++) {
+                double[] data;
+                double center = vna.center, span = vna.span, temperature;
+                if (test.archive != null) {
+                    long n = test.records[k];
+                    data = test.archive.Trace(n);
+                    center = test.archive.Center(n); // a tracked window moves from trace to trace
+                    span = test.archive.Span(n);
+                    temperature = test.archive.Temperature(n);
+                } else {
+                    try {
+                        data = test.Load(k);
+                        temperature = test.temperatures[k];
+                    } catch (IOException | NumberFormatException e) {
+                        System.err.println("Error! Couldn't read file `" + test.files[k] + "'.");
+                        System.exit(1);
+                        return;
+                    }
+                }
+                int n = data.length / 2 / m;
+                if (!fitter.Fit(data, n * vna.Primary(), n, center, span)) {
+                    synchronized (test) {
+                        test.failed++;
+                    }
+                }
+                int[] label = test.labels[k];
+                test.results[k] = String.format(Locale.ROOT, "%d\t%03d\t%03d\t%s\t%.4f\n", label[0], label[1], label[2], fitter.Result(), temperature);
+            }
+        }
+    }
+
+    static void printHelp() {
+        System.err.println("+-----------+\n|   USAGE   |\n+-----------+");
+        System.err.println("The program fits the resonance of every transmission trace of finished tests in parallel and writes a table to the directory of each test" +
+                "\n\nusage: java -jar BatchAnalysis.jar [options] [directories]" +
+                "\nevery directory below the given ones with a slow_control.dat is a test, the traces are read from traces.arc or else from the text files" +
+                "\n\npossible options are:" +
+                "\n-j\tnumber of threads" +
+                "\n-o\tname of the table in the directory of every test" +
+                "\n\ndefault setting is equivalent to:" +
+                "\njava -jar BatchAnalysis.jar -j <cores> -o batch.dat .");
+    }
+}
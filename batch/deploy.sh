@@ -0,0 +1,4 @@
+#!/bin/bash
+
+javac -sourcepath .:../common -d . BatchAnalysis.java
+jar cvfm BatchAnalysis.jar Manifest *.class
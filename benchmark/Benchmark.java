@@ -0,0 +1,216 @@
+/* This program measures the host-side cost per trace of transfer parsing and recording, both for the present code and for the original one kept in Legacy.java, such that every optimisation comes with numbers before and after.
+ *
+ * All Copyleft Reserved!
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+public class Benchmark {
+    static double seconds = 2.; // measurement per case, the same again for warm-up
+    static int[] sizes = {201, 801, 1601, 20001};
+    static volatile Object sink; // keeps the results alive
+
+    interface Op {
+        Object Run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-t"))
+                    seconds = Double.parseDouble(args[++i]);
+                else if (args[i].equals("-n")) {
+                    String[] values = args[++i].split(",");
+                    sizes = new int[values.length];
+                    for (int k = 0; k < values.length; k++)
+                        sizes[k] = Integer.parseInt(values[k]);
+                } else
+                    throw new IllegalArgumentException();
+            }
+        } catch (RuntimeException e) {
+            printHelp();
+            System.exit(1);
+        }
+
+        VectorNetworkAnalyzer rohde = Connect();
+        TraceRecorder recorder = new TraceRecorder("TEXT", StaticTest.Settings(), "repetition", StaticTest.vna);
+        TraceArchive archive = null;
+        SlowControlLog log = new SlowControlLog("benchmark_slow_control.dat", StaticTest.Settings());
+        ResonanceFitter fitter = new ResonanceFitter();
+        System.out.println(String.format("%-24s%8s%14s%14s", "case", "points", "ns/op", "B/op"));
+
+        for (final int n : sizes) {
+            final double[] trace = Trace(n);
+            final String[] text = new String[trace.length];
+            for (int i = 0; i < trace.length; i++)
+                text[i] = String.format(Locale.ROOT, "%.9E", trace[i]);
+
+            final InputStreamReader legacyIn = new InputStreamReader(new Repeating(Ascii(trace)));
+            Measure("receive+split legacy", n, () -> Legacy.ReceiveAndSplit(legacyIn));
+            rohde.config.format = "ASCII";
+            rohde.scpi.in = new DataInputStream(new BufferedInputStream(new Repeating(Ascii(trace))));
+            Measure("receive+parse ascii", n, () -> rohde.ParseAscii(rohde.Receive()));
+            rohde.config.format = "REAL32";
+            rohde.scpi.in = new DataInputStream(new BufferedInputStream(new Repeating(Block(trace, 4))));
+            Measure("receive block real32", n, () -> rohde.ReceiveBlock());
+            rohde.config.format = "REAL64";
+            rohde.scpi.in = new DataInputStream(new BufferedInputStream(new Repeating(Block(trace, 8))));
+            Measure("receive block real64", n, () -> rohde.ReceiveBlock());
+
+            Measure("record trace legacy", n, () -> {
+                Legacy.RecordTrace(0, text);
+                return text;
+            });
+            Measure("record trace text", n, () -> {
+                recorder.Trace("00000.dat", 0, 0, 0, 0L, 23., trace);
+                return trace;
+            });
+            archive = new TraceArchive("benchmark_traces.arc", StaticTest.Settings(), trace.length);
+            final TraceArchive a = archive;
+            Measure("record trace archive", n, () -> {
+                a.Append(0, 0, 0, 0L, 23., 682., 150., trace);
+                return trace;
+            });
+            archive.CleanUp();
+
+            Measure("fit resonance", n, () -> fitter.Fit(trace, 682., 150.));
+        }
+
+        Measure("slow control legacy", 0, () -> {
+            Legacy.RecordSlowControl("1970-01-01 00:00:00", 23.);
+            return null;
+        });
+        Measure("slow control log", 0, () -> {
+            log.Record("1970-01-01 00:00:00", 23., 0., 0., System.nanoTime());
+            return null;
+        });
+        log.CleanUp();
+        recorder.CleanUp();
+        System.exit(0);
+    }
+
+    static void printHelp() {
+        System.err.println("+-----------+\n|   USAGE   |\n+-----------+");
+        System.err.println("The program times parsing and recording of traces and writes scratch files to the working directory" +
+                "\n\npossible options are:" +
+                "\n-t\tmeasurement time per case in s" +
+                "\n-n\tnumbers of trace points separated by commas" +
+                "\n\ndefault setting is equivalent to:" +
+                "\njava -jar Benchmark.jar -t 2 -n 201,801,1601,20001");
+    }
+
+    // average time and heap allocation of the current thread per call, after a warm-up of the same length
+    static void Measure(String name, int points, Op op) throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long duration = (long) (seconds * 1e9);
+
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < duration)
+            sink = op.Run();
+
+        long calls = 0;
+        long allocated = bean.getThreadAllocatedBytes(id);
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            sink = op.Run();
+            calls++;
+        } while ((elapsed = System.nanoTime() - start) < duration);
+        allocated = bean.getThreadAllocatedBytes(id) - allocated;
+
+        System.out.println(String.format("%-24s%8d%14.0f%14d", name, points, (double) elapsed / calls, allocated / calls));
+    }
+
+    // the driver connected to a stand-in that only acknowledges the preset, the streams are replaced afterwards
+    static VectorNetworkAnalyzer Connect() throws IOException, InstrumentException {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread preset = new Thread(() -> {
+            try {
+                Socket socket = server.accept();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                Writer out = new OutputStreamWriter(socket.getOutputStream());
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.contains("SYST:ERR:ALL?")) {
+                        out.write("0,\"No error\"\n");
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // the benchmark is over
+            }
+        });
+        preset.setDaemon(true);
+        preset.start();
+        VectorNetworkAnalyzer.Config config = new VectorNetworkAnalyzer.Config();
+        config.host = "localhost";
+        config.port = server.getLocalPort();
+        return new VectorNetworkAnalyzer(config);
+    }
+
+    // Lorentzian of transmission
+    static double[] Trace(int points) {
+        Random random = new Random(points);
+        double[] trace = new double[2*points];
+        for (int i = 0; i < points; i++) {
+            double u = 2 * (-75. + 150. * i / (points - 1)) / 40.;
+            trace[2*i] = 1e-2 / (1 + u*u) * (1 + 1e-3 * random.nextGaussian());
+            trace[2*i+1] = -1e-2 * u / (1 + u*u) * (1 + 1e-3 * random.nextGaussian());
+        }
+        return trace;
+    }
+
+    static byte[] Ascii(double[] trace) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < trace.length; i++)
+            sb.append(i > 0 ? "," : "").append(String.format(Locale.ROOT, "%.9E", trace[i]));
+        return sb.append('\n').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // IEEE 488.2 definite length block in little-endian byte order
+    static byte[] Block(double[] trace, int size) {
+        ByteBuffer data = ByteBuffer.allocate(size * trace.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (double d : trace) {
+            if (size == 4)
+                data.putFloat((float) d);
+            else
+                data.putDouble(d);
+        }
+        String length = String.valueOf(data.capacity());
+        byte[] head = ("#" + length.length() + length).getBytes(StandardCharsets.US_ASCII);
+        byte[] block = new byte[head.length + data.capacity() + 1];
+        System.arraycopy(head, 0, block, 0, head.length);
+        System.arraycopy(data.array(), 0, block, head.length, data.capacity());
+        block[block.length - 1] = '\n';
+        return block;
+    }
+
+    // endless repetition of one reply, in place of the socket
+    static class Repeating extends InputStream {
+        byte[] payload;
+        int position = 0;
+
+        Repeating(byte[] payload) {
+            this.payload = payload;
+        }
+
+        public int read() {
+            int b = payload[position] & 0xff;
+            position = (position + 1) % payload.length;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, payload.length - position);
+            System.arraycopy(payload, position, b, off, n);
+            position = (position + n) % payload.length;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.io.*;
+
+// The host-side hot paths as they were before the binary transfer and the long-lived writers,
+// kept verbatim apart from the error handling to give the baseline of every comparison.
+class Legacy {
+  // VectorNetworkAnalyzer.Receive() with the InputStreamReader, followed by the split in FetchData()
+  static String[] ReceiveAndSplit(InputStreamReader in) throws IOException {
+    int c;
+    StringBuilder sb = new StringBuilder();
+    while ((c = in.read()) != '\n') {
+      sb.append((char) c);
+    }
+    return sb.toString().split(",");
+  }
+
+  // StaticTest.RecordTrace(int, String[]), now TraceRecorder.Trace()
+  static void RecordTrace(int fileNum, String[] data) throws IOException {
+    String fname = String.format("%05d.dat", fileNum);
+    FileWriter f = new FileWriter(fname);
+    for (int i = 0; i < data.length/2; i++)
+      f.write(data[2*i] + "\t\t" + data[2*i+1] + '\n'); // real, imaginary
+    f.close();
+  }
+
+  // StaticTest.RecordSlowControl(double, false)
+  static void RecordSlowControl(String timestamp, double temperature) throws IOException {
+    FileWriter f = new FileWriter("slow_control.dat", true); // append to the existing file
+    f.write(timestamp + "\t\t" + temperature + '\n');
+    f.close();
+  }
+}
@@ -0,0 +1,4 @@
+#!/bin/bash
+
+javac -sourcepath .:../common:../static -d . Benchmark.java
+jar cvfm Benchmark.jar Manifest *.class
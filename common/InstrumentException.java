@@ -0,0 +1,12 @@
+// failure in the communication with an instrument, the test may reconnect and try again
+class InstrumentException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  InstrumentException(String message) {
+    super(message);
+  }
+
+  InstrumentException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
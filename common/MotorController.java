@@ -0,0 +1,134 @@
+import java.io.*;
+import java.net.*;
+
+// isel protocol, every command ends with a carriage return and is answered with a single character
+class MotorController {
+  static final int factor = 320; // 1 mm <=> 320 micro steps
+
+  static class Config {
+    String host = "192.168.254.254";
+    int port = 2001;
+    int xSpeed = 16000; // 50 mm/s
+    int zSpeed = 16000; // 50 mm/s
+    int timeout = 5000; // ms, allowance for a reply on top of the expected travel time
+    int homeTimeout = 120000; // ms, reference run of both axes
+
+    // travel time in s between two positions in mm, both axes are driven one after another in the worst case
+    double TravelTime(double x0, double z0, double x1, double z1) {
+      return Math.abs(x1 - x0) * factor / xSpeed + Math.abs(z1 - z0) * factor / zSpeed;
+    }
+  }
+
+  Config config;
+  Socket socketMC;
+  InputStream inMC;
+  OutputStreamWriter outMC;
+  int xLast = 0, zLast = 0; // micro steps, last commanded position
+  double moveTime = 0.; // s, duration of the last movement
+  long moveStart; // ns, the latest movement was commanded
+  int xNext, zNext, moveWait; // micro steps and ms of the movement in progress
+
+  MotorController(Config config) throws InstrumentException {
+    this.config = config;
+    try {
+      socketMC = new Socket();
+      socketMC.connect(new InetSocketAddress(config.host, config.port), config.timeout);
+      inMC = socketMC.getInputStream();
+      outMC = new OutputStreamWriter(socketMC.getOutputStream());
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't establish connection to the motor controller.", e);
+    }
+
+    Send("@03"); // initialize both axes 
+    if (!Receive(config.homeTimeout).equals("0"))
+      throw new InstrumentException("Couldn't initialize both axises.");
+
+    Send("@0N3"); // Set current position as reference point
+    if (!Receive(config.timeout).equals("0"))
+      throw new InstrumentException("Couldn't set current position as reference point.");
+
+    System.out.println("the motor controller is ready");
+  }
+
+  void Send(String cmd) throws InstrumentException {
+    try {
+      outMC.write(cmd + "\r");
+      outMC.flush();
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't send commands to the motor controller.", e);
+    }
+  }
+
+  // every command is answered with a single handshake character once it has been carried out
+  String Receive(int wait) throws InstrumentException {
+    int c;
+
+    try {
+      socketMC.setSoTimeout(wait);
+      c = inMC.read(); // blocks until the reply arrives
+      if (c < 0)
+        throw new EOFException();
+    } catch (SocketTimeoutException e) {
+      throw new InstrumentException("No reply from the motor controller within " + wait + " ms.", e);
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't read feedback from the motor controller.", e);
+    }
+
+    return String.valueOf((char) c);
+  }
+
+  // expected duration of a movement in ms, both axes are driven one after another in the worst case
+  int TravelTime(int posX, int posZ) {
+    return TravelTime(posX, posZ, config.zSpeed);
+  }
+
+  int TravelTime(int posX, int posZ, int zSpeed) {
+    return (int) (1000. * Math.abs(posX - xLast) / config.xSpeed + 1000. * Math.abs(posZ - zLast) / zSpeed);
+  }
+
+  void Move(double x, double z) throws InstrumentException {
+    Start(x, z, config.zSpeed);
+    Await();
+  }
+
+  // commands a movement with the given speed of Z in micro steps per second and returns right away,
+  // the reply is collected by Await() once it is over
+  void Start(double x, double z, int zSpeed) throws InstrumentException {
+    xNext = (int) (x * factor);
+    zNext = (int) (z * factor);
+    moveWait = 2*TravelTime(xNext, zNext, zSpeed) + config.timeout;
+    Send("@0M " + xNext + ", " + config.xSpeed + ", " + zNext + ", " + zSpeed);
+    moveStart = System.nanoTime();
+  }
+
+  void Await() throws InstrumentException {
+    String reply = Receive((int) Math.max(moveWait - (System.nanoTime() - moveStart) / 1000000, config.timeout));
+    if (!reply.equals("0"))
+      throw new InstrumentException("Couldn't move the cavity, the motor controller replied " + reply + ".");
+    moveTime = (System.nanoTime() - moveStart) * 1e-9;
+    xLast = xNext;
+    zLast = zNext;
+  }
+
+  void CleanUp() throws InstrumentException {
+    Send("@0M 0, " + config.xSpeed + ", 0, " + config.zSpeed); // back to origin
+    if (!Receive(2*TravelTime(0, 0) + config.timeout).equals("0"))
+      throw new InstrumentException("Couldn't finalize the cavity position.");
+    try {
+      inMC.close();
+      outMC.close();
+      socketMC.close();
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't disconnect with the motor controller safely.", e);
+    }
+  }
+
+  // after a failure, nothing is sent anymore
+  void Abort() {
+    try {
+      socketMC.close();
+    } catch (IOException e) {
+      // the connection is given up anyway
+    }
+  }
+}
@@ -0,0 +1,59 @@
+class Multimeter {
+  static class Config {
+    String host = "192.168.254.4";
+    int port = 5025;
+    int nplc = 10; // integration time in power line cycles
+    int timeout = 10000; // ms, allowance for a reply
+  }
+
+  Config config;
+  ScpiTransport scpi;
+  double readTime = 0.; // s, duration of the last reading
+
+  Multimeter(Config config) throws InstrumentException {
+    this.config = config;
+    scpi = new ScpiTransport("the multimeter", config.host, config.port, config.timeout);
+
+    scpi.Queue("*RST;*WAI;*CLS"); // reset everything
+    scpi.Queue("CONF:TEMP THER"); // set sensor to thermistor
+    scpi.Queue("TEMP:NPLC " + config.nplc); // set average cycle
+
+    Send("*WAI;SYST:ERR?"); // together with the preset
+    String error = Receive();
+    if (!error.equals("+0,\"No error\""))
+      throw new InstrumentException("Couldn't preset the multimeter: " + error);
+
+    System.out.println("the multimeter is ready");
+  }
+
+  void Send(String cmd) throws InstrumentException {
+    scpi.Send(cmd);
+  }
+
+  String Receive() throws InstrumentException {
+    return scpi.Receive();
+  }
+
+  double FetchData() throws InstrumentException {
+    long start = System.nanoTime();
+    Send("*WAI;READ?");
+    String reply = Receive();
+    double value;
+    try {
+      value = Double.parseDouble(reply);
+    } catch (NumberFormatException e) {
+      throw new InstrumentException("Couldn't parse the reading of the multimeter: " + reply, e);
+    }
+    readTime = (System.nanoTime() - start) * 1e-9;
+    return value;
+  }
+
+  void CleanUp() throws InstrumentException {
+    scpi.Close();
+  }
+
+  // after a failure, nothing is sent anymore
+  void Abort() {
+    scpi.Abort();
+  }
+}
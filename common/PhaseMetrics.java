@@ -0,0 +1,143 @@
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+// Latency of every phase of a point in histograms of logarithmic buckets, which keep about 1% of
+// resolution from nanoseconds up to hours at a fixed size, like the HDR histograms. The duration of
+// the recent points gives the expected end, which is printed together with a summary of the phases
+// and written to a metrics file every `interval' seconds and at the end.
+class PhaseMetrics {
+  enum Phase {
+    MOVE, SETTLE, SWEEP, TRANSFER, PARSE, DMM, WRITE, POINT;
+  }
+
+  static double interval = 60.; // s, between two summaries, 0 = only at the end
+  static int window = 20; // recent points for the rate
+
+  static class Histogram {
+    static final int bits = 7; // significant bits kept of every value
+    static final int sub = 1 << bits, half = sub / 2;
+    long[] counts = new long[sub + (64 - bits) * half];
+    long count = 0, sum = 0, max = 0;
+
+    void Record(long value) {
+      value = Math.max(value, 0);
+      int shift = Math.max(64 - Long.numberOfLeadingZeros(value) - bits, 0);
+      counts[shift == 0 ? (int) value : sub + (shift - 1) * half + (int) (value >>> shift) - half]++;
+      count++;
+      sum += value;
+      max = Math.max(max, value);
+    }
+
+    // middle of the bucket holding the given quantile
+    long Quantile(double q) {
+      long rank = Math.max((long) Math.ceil(q * count), 1), seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen < rank)
+          continue;
+        if (i < sub)
+          return i;
+        int shift = (i - sub) / half + 1;
+        long mantissa = (i - sub) % half + half;
+        return Math.min((mantissa << shift) + (1L << shift) / 2, max);
+      }
+      return max;
+    }
+  }
+
+  String fname;
+  int total; // points of the test
+  int done = 0;
+  Histogram[] histograms = new Histogram[Phase.values().length];
+  long[] recent = new long[window]; // ns, duration of the latest points
+  long start, lastPoint, lastSummary;
+  DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+  PhaseMetrics(String fname, int total) {
+    this.fname = fname;
+    this.total = total;
+    for (int i = 0; i < histograms.length; i++)
+      histograms[i] = new Histogram();
+    start = lastPoint = lastSummary = System.nanoTime();
+  }
+
+  // phases are recorded by the thread which carried them out
+  synchronized void Record(Phase phase, long nanos) {
+    histograms[phase.ordinal()].Record(nanos);
+  }
+
+  void Record(Phase phase, double seconds) {
+    Record(phase, (long) (seconds * 1e9));
+  }
+
+  // phases of the latest acquisition of the analyzer
+  void Record(VectorNetworkAnalyzer vna) {
+    Record(Phase.SETTLE, vna.settleTime);
+    Record(Phase.SWEEP, vna.sweepNanos);
+    Record(Phase.TRANSFER, vna.transferNanos);
+    Record(Phase.PARSE, vna.parseNanos);
+  }
+
+  // end of a point, the time since the previous one includes everything the scan spent on it
+  synchronized void Point() {
+    long now = System.nanoTime();
+    histograms[Phase.POINT.ordinal()].Record(now - lastPoint);
+    recent[done % window] = now - lastPoint;
+    lastPoint = now;
+    done++;
+    if (done == 1)
+      System.out.println("It will approximately end around " + dateFormat.format(End()));
+    if (interval > 0 && (now - lastSummary) * 1e-9 >= interval) {
+      Summary();
+      lastSummary = now;
+    }
+  }
+
+  // expected end from the mean duration of the recent points
+  synchronized Date End() {
+    int n = Math.min(done, window);
+    double mean = 0.;
+    for (int i = 0; i < n; i++)
+      mean += recent[i] * 1e-9 / n;
+    return new Date(System.currentTimeMillis() + (long) (1000 * mean * (total - done)));
+  }
+
+  synchronized void Summary() {
+    System.out.println(String.format("%d of %d points after %.1f min, it will approximately end around %s",
+            done, total, (System.nanoTime() - start) * 1e-9 / 60., dateFormat.format(End())));
+    System.out.println(String.format("%-12s%8s%10s%10s%10s%10s%10s", "phase [ms]", "count", "mean", "50%", "90%", "99%", "max"));
+    for (Phase phase : Phase.values()) {
+      Histogram h = histograms[phase.ordinal()];
+      if (h.count > 0)
+        System.out.println(String.format("%-12s%8d%10.1f%10.1f%10.1f%10.1f%10.1f", phase.toString().toLowerCase(), h.count,
+                h.sum * 1e-6 / h.count, h.Quantile(.5) * 1e-6, h.Quantile(.9) * 1e-6, h.Quantile(.99) * 1e-6, h.max * 1e-6));
+    }
+    Export();
+  }
+
+  // the whole file is rewritten, such that it always holds the latest state
+  void Export() {
+    try (BufferedWriter f = new BufferedWriter(new FileWriter(fname))) {
+      f.write("# points done                              " + done + '\n');
+      f.write("# points in total                          " + total + '\n');
+      f.write("# elapsed time [s]                         " + (System.nanoTime() - start) * 1e-9 + '\n');
+      f.write("# expected end                             " + dateFormat.format(End()) + '\n');
+      f.write("# phase, count, mean [ms], 50% [ms], 90% [ms], 99% [ms], max [ms], total [s]\n");
+      for (Phase phase : Phase.values()) {
+        Histogram h = histograms[phase.ordinal()];
+        f.write(String.format(Locale.ROOT, "%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\n", phase.toString().toLowerCase(), h.count,
+                h.count > 0 ? h.sum * 1e-6 / h.count : 0., h.Quantile(.5) * 1e-6, h.Quantile(.9) * 1e-6, h.Quantile(.99) * 1e-6,
+                h.max * 1e-6, h.sum * 1e-9));
+      }
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    }
+  }
+
+  void CleanUp() {
+    if (lastSummary != lastPoint || done == 0) // not summarized right after the last point yet
+      Summary();
+  }
+}
@@ -0,0 +1,192 @@
+import java.util.*;
+
+// Levenberg-Marquardt fit of |S|^2 with the Cauchy distribution c / (1 + (2 (f - f0) / fwhm)^2), the same
+// model, weights and error propagation as resonance_fit in analysis/*.py. The work arrays are kept between
+// fits, so a fitter allocates nothing once it has seen the largest trace; use one fitter per thread.
+class ResonanceFitter {
+  static final int maxIterations = 200;
+  static final double convergence = 1e-10; // relative change of chi-square
+
+  double[] freq = new double[0], amp = new double[0], weight = new double[0]; // kHz, scaled |S|^2, 1/sigma^2
+  int n = 0;
+  double[] p = new double[3], trial = new double[3]; // f0 [kHz from center], fwhm [kHz], c
+  double[] alpha = new double[9], beta = new double[3], curvature = new double[9], delta = new double[3];
+  double[] cov = new double[9];
+
+  // results, frequencies in kHz, NaN if the fit failed
+  double f0, f0Stat, f0Sys, fwhm, fwhmErr, q, qErr, chi2;
+  int exponent; // |S|^2 was scaled by 10^exponent
+
+  boolean Fit(double[] trace, double center, double span) {
+    return Fit(trace, 0, trace.length / 2, center, span);
+  }
+
+  // trace holds interleaved real and imaginary parts, points of it are used from the offset on,
+  // center in MHz, span in kHz
+  boolean Fit(double[] trace, int offset, int points, double center, double span) {
+    n = points;
+    if (freq.length < n) {
+      freq = new double[n];
+      amp = new double[n];
+      weight = new double[n];
+    }
+
+    double max = 0.;
+    for (int i = 0; i < n; i++) {
+      double re = trace[2*(offset+i)], im = trace[2*(offset+i)+1];
+      amp[i] = re*re + im*im;
+      max = Math.max(max, amp[i]);
+    }
+    exponent = max > 0 ? (int) -Math.floor(Math.log10(max)) : 0;
+    double scale = Math.pow(10, exponent);
+    for (int i = 0; i < n; i++) {
+      amp[i] *= scale;
+      double sigma = amp[i] * 3e-2 * Math.log(10);
+      weight[i] = sigma > 0 ? 1 / (sigma*sigma) : 0.;
+      freq[i] = -span/2 + span * i / (n==1 ? 1 : n-1);
+    }
+
+    if (!Minimize(span) || !Invert()) {
+      f0 = f0Stat = f0Sys = fwhm = fwhmErr = q = qErr = Double.NaN;
+      return false;
+    }
+
+    // propagation as in resonance_fit, the systematic error of the center enters Q
+    double fo = p[0];
+    fwhm = Math.abs(p[1]);
+    f0 = fo + 1e3*center;
+    f0Stat = Math.sqrt(cov[0]);
+    f0Sys = 1e-3 * center;
+    fwhmErr = Math.sqrt(cov[4]);
+    q = f0 / fwhm;
+    double v0 = 1/fwhm, v1 = 1/fwhm, v2 = -f0/(fwhm*fwhm);
+    qErr = Math.sqrt(v0*v0*1e-6*center*center + v1*v1*cov[0] + 2*v1*v2*cov[1] + v2*v2*cov[4]);
+
+    return true;
+  }
+
+  // start at the highest point with the width of the points beyond half maximum
+  void Guess(double span) {
+    int peak = 0;
+    for (int i = 1; i < n; i++)
+      if (amp[i] > amp[peak])
+        peak = i;
+    int above = 0;
+    for (int i = 0; i < n; i++)
+      if (amp[i] > amp[peak]/2)
+        above++;
+    p[0] = freq[peak];
+    p[1] = Math.max(above, 2) * span / (n==1 ? 1 : n-1);
+    p[2] = amp[peak];
+  }
+
+  boolean Minimize(double span) {
+    Guess(span);
+    double lambda = 1e-3;
+    chi2 = Normal(p, alpha, beta);
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+      for (int k = 0; k < 9; k++)
+        curvature[k] = alpha[k];
+      for (int k = 0; k < 3; k++)
+        curvature[4*k] *= 1 + lambda;
+      if (!Solve(curvature, beta, delta))
+        return false;
+      for (int k = 0; k < 3; k++)
+        trial[k] = p[k] + delta[k];
+
+      double chi2Trial = Chi2(trial);
+      if (chi2Trial < chi2) {
+        double change = (chi2 - chi2Trial) / chi2Trial;
+        for (int k = 0; k < 3; k++)
+          p[k] = trial[k];
+        chi2 = Normal(p, alpha, beta);
+        lambda /= 10;
+        if (change < convergence)
+          break;
+      } else {
+        lambda *= 10;
+        if (lambda > 1e10)
+          break; // no further improvement possible
+      }
+    }
+
+    return !Double.isNaN(chi2) && !Double.isInfinite(chi2) && p[1] != 0.;
+  }
+
+  double Chi2(double[] par) {
+    double sum = 0.;
+    for (int i = 0; i < n; i++) {
+      double u = 2 * (freq[i] - par[0]) / par[1];
+      double r = amp[i] - par[2] / (1 + u*u);
+      sum += weight[i] * r*r;
+    }
+    return sum;
+  }
+
+  // J^T W J and J^T W r of the model at par, returns chi-square
+  double Normal(double[] par, double[] a, double[] b) {
+    for (int k = 0; k < 9; k++)
+      a[k] = 0.;
+    for (int k = 0; k < 3; k++)
+      b[k] = 0.;
+    double sum = 0.;
+    for (int i = 0; i < n; i++) {
+      double u = 2 * (freq[i] - par[0]) / par[1];
+      double d = 1 + u*u;
+      double r = amp[i] - par[2] / d;
+      double j0 = 4 * par[2] * u / (par[1] * d*d); // d/df0
+      double j1 = 2 * par[2] * u*u / (par[1] * d*d); // d/dfwhm
+      double j2 = 1 / d; // d/dc
+      double w = weight[i];
+      a[0] += w*j0*j0; a[1] += w*j0*j1; a[2] += w*j0*j2;
+      a[4] += w*j1*j1; a[5] += w*j1*j2;
+      a[8] += w*j2*j2;
+      b[0] += w*j0*r; b[1] += w*j1*r; b[2] += w*j2*r;
+      sum += w*r*r;
+    }
+    a[3] = a[1]; a[6] = a[2]; a[7] = a[5];
+    return sum;
+  }
+
+  // 3x3 linear system by Cramer's rule, false if singular
+  static boolean Solve(double[] a, double[] b, double[] x) {
+    double det = Determinant(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8]);
+    if (det == 0. || Double.isNaN(det))
+      return false;
+    x[0] = Determinant(b[0], a[1], a[2], b[1], a[4], a[5], b[2], a[7], a[8]) / det;
+    x[1] = Determinant(a[0], b[0], a[2], a[3], b[1], a[5], a[6], b[2], a[8]) / det;
+    x[2] = Determinant(a[0], a[1], b[0], a[3], a[4], b[1], a[6], a[7], b[2]) / det;
+    return true;
+  }
+
+  static double Determinant(double a, double b, double c, double d, double e, double f, double g, double h, double i) {
+    return a*(e*i - f*h) - b*(d*i - f*g) + c*(d*h - e*g);
+  }
+
+  // covariance from the inverse of J^T W J at the minimum, sigma taken as absolute
+  boolean Invert() {
+    double[] a = alpha;
+    double det = Determinant(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8]);
+    if (det == 0. || Double.isNaN(det))
+      return false;
+    cov[0] = (a[4]*a[8] - a[5]*a[7]) / det;
+    cov[1] = (a[2]*a[7] - a[1]*a[8]) / det;
+    cov[2] = (a[1]*a[5] - a[2]*a[4]) / det;
+    cov[3] = (a[5]*a[6] - a[3]*a[8]) / det;
+    cov[4] = (a[0]*a[8] - a[2]*a[6]) / det;
+    cov[5] = (a[2]*a[3] - a[0]*a[5]) / det;
+    cov[6] = (a[3]*a[7] - a[4]*a[6]) / det;
+    cov[7] = (a[1]*a[6] - a[0]*a[7]) / det;
+    cov[8] = (a[0]*a[4] - a[1]*a[3]) / det;
+    return true;
+  }
+
+  // one line of resonance.dat
+  String Result() {
+    return String.format(Locale.ROOT, "%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f", f0, f0Stat, f0Sys, fwhm, fwhmErr, q, qErr, chi2 / Math.max(n - 3, 1));
+  }
+
+  static String Columns() {
+    return "f0 [kHz], statistic error [kHz], systematic error [kHz], FWHM [kHz], error [kHz], Q, error, reduced chi-square";
+  }
+}
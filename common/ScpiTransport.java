@@ -0,0 +1,130 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
+
+// SCPI over a raw socket, commands and replies end with a line feed. Both directions are buffered,
+// queued commands leave together with the next flush, one write for a whole batch of them, and
+// binary blocks are read into a reused buffer.
+// A reply which doesn't arrive within the timeout fails like a broken connection.
+class ScpiTransport {
+  String name; // of the instrument, used in the messages
+  Socket socket;
+  DataInputStream in;
+  OutputStream out;
+  byte[] block = new byte[0]; // reused buffer of binary blocks
+  long replyTick = 0; // ns, arrival of the first byte of the latest reply
+  int timeout; // ms
+
+  // timeout in ms
+  ScpiTransport(String name, String host, int port, int timeout) throws InstrumentException {
+    this.name = name;
+    this.timeout = timeout;
+    try {
+      socket = new Socket();
+      socket.connect(new InetSocketAddress(host, port), timeout);
+      socket.setSoTimeout(timeout);
+      socket.setTcpNoDelay(true); // commands are short and mostly answered
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new BufferedOutputStream(socket.getOutputStream());
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't establish connection to " + name + ".", e);
+    }
+  }
+
+  // each command stays a message of its own, so the instrument parses it like a single one
+  void Queue(String cmd) throws InstrumentException {
+    try {
+      out.write((cmd + "\n").getBytes(StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't send commands to " + name + ".", e);
+    }
+  }
+
+  void Flush() throws InstrumentException {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't send commands to " + name + ".", e);
+    }
+  }
+
+  // the command together with the ones queued before
+  void Send(String cmd) throws InstrumentException {
+    Queue(cmd);
+    Flush();
+  }
+
+  String Receive() throws InstrumentException {
+    int c;
+    StringBuilder sb = new StringBuilder();
+
+    try {
+      c = in.read();
+      replyTick = System.nanoTime();
+      while (c != '\n') {
+        if (c < 0)
+          throw new EOFException();
+        sb.append((char) c);
+        c = in.read();
+      }
+    } catch (SocketTimeoutException e) {
+      throw new InstrumentException("No reply from " + name + " within " + timeout + " ms.", e);
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't read feedback from " + name + ".", e);
+    }
+
+    return sb.toString();
+  }
+
+  String Query(String cmd) throws InstrumentException {
+    Send(cmd);
+    return Receive();
+  }
+
+  // IEEE 488.2 definite length block, #<n><length><data>\n, the content is valid until the next block
+  ByteBuffer ReceiveBlock() throws InstrumentException {
+    int length = 0;
+
+    try {
+      if (in.read() != '#')
+        throw new IOException();
+      replyTick = System.nanoTime();
+      int digits = in.read() - '0';
+      if (digits < 1 || digits > 9)
+        throw new IOException(); // indefinite length is not expected
+      for (int i = 0; i < digits; i++)
+        length = 10*length + (in.read() - '0');
+      if (block.length < length)
+        block = new byte[length];
+      in.readFully(block, 0, length);
+      if (in.read() != '\n')
+        throw new IOException();
+    } catch (SocketTimeoutException e) {
+      throw new InstrumentException("No reply from " + name + " within " + timeout + " ms.", e);
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't read binary block from " + name + ".", e);
+    }
+
+    return ByteBuffer.wrap(block, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  void Close() throws InstrumentException {
+    try {
+      in.close();
+      out.close();
+      socket.close();
+    } catch (IOException e) {
+      throw new InstrumentException("Couldn't disconnect with " + name + " safely.", e);
+    }
+  }
+
+  // after a failure, nothing is sent anymore
+  void Abort() {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // the connection is given up anyway
+    }
+  }
+}
@@ -0,0 +1,152 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+// `slow_control.dat' kept open for the whole test, flushed every `records' lines, at the latest `interval'
+// ms after a line was added also if no further line follows, and on shutdown, optionally forced to the disk
+// on every flush
+class SlowControlLog {
+  static int records = 10;
+  static int interval = 5000; // ms
+  static boolean sync = true; // fsync on every flush
+
+  String fname;
+  FileChannel channel;
+  BufferedWriter writer;
+  long start = System.nanoTime(); // origin of the monotonic time
+  long lastFlush = start;
+  int unflushed = 0;
+  ScheduledExecutorService timer; // flushes the lines of a stalled test
+  Thread hook; // flushes on System.exit, removed again by CleanUp
+  ReentrantLock lock = new ReentrantLock(); // of the writer, shared by the test, the timer and the hook
+
+  SlowControlLog(String fname, String settings) {
+    this(fname, settings, false);
+  }
+
+  // on resume, the lines are appended to the existing file, whose monotonic time starts over
+  SlowControlLog(String fname, String settings, boolean resume) {
+    this.fname = fname;
+    resume = resume && Files.exists(Paths.get(fname));
+    try {
+      channel = FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+      writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't create file `" + fname + "'.");
+      System.exit(1);
+    }
+
+    try {
+      if (!resume) {
+        writer.write(settings);
+        writer.write("# date time, temperature [deg C], movement [s], sweep [s], monotonic time [s]\n");
+      }
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    }
+    Flush();
+
+    hook = new Thread(() -> Shutdown());
+    Runtime.getRuntime().addShutdownHook(hook); // also after System.exit
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "slow control flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleWithFixedDelay(() -> Expire(), interval, Math.max(interval / 4, 1), TimeUnit.MILLISECONDS);
+  }
+
+  // tick is the System.nanoTime() of the acquisition
+  void Record(String timestamp, double temperature, double move, double sweep, long tick) {
+    lock.lock();
+    try {
+      writer.write(timestamp + "\t\t" + temperature + "\t\t" + String.format(Locale.ROOT, "%.3f\t\t%.3f\t\t%.3f", move, sweep, (tick - start) * 1e-9) + '\n');
+      unflushed++;
+      if (unflushed >= records || (System.nanoTime() - lastFlush) * 1e-6 >= interval)
+        Flush();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // lines which waited `interval' ms are flushed without another one being added
+  void Expire() {
+    lock.lock();
+    try {
+      if (unflushed > 0 && (System.nanoTime() - lastFlush) * 1e-6 >= interval)
+        Flush();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void Flush() {
+    lock.lock();
+    try {
+      if (!channel.isOpen())
+        return;
+      writer.flush();
+      if (sync)
+        channel.force(false);
+      unflushed = 0;
+      lastFlush = System.nanoTime();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the lock is only waited for a while, since System.exit may have been called by the thread holding it
+  void Shutdown() {
+    try {
+      if (!lock.tryLock(1, TimeUnit.SECONDS)) {
+        System.err.println("Error! Couldn't flush file `" + fname + "' on shutdown, it is in use.");
+        return;
+      }
+    } catch (InterruptedException e) {
+      return;
+    }
+    try {
+      if (channel.isOpen()) {
+        writer.flush();
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't flush file `" + fname + "' on shutdown.");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void CleanUp() {
+    lock.lock();
+    try {
+      timer.shutdown();
+      try {
+        Runtime.getRuntime().removeShutdownHook(hook);
+      } catch (IllegalStateException e) {
+        // already shutting down, the hook runs anyway
+      }
+      Flush();
+      try {
+        writer.close();
+      } catch (IOException e) {
+        System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+        System.exit(1);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+// Readings of the multimeter taken by a thread of its own every `period' seconds, such that the
+// integration time stays off the acquisitions. The readings are kept in a ring of primitive arrays
+// with a single writer: a slot is filled before the count publishes it, and a reader checks the count
+// again afterwards, so it never locks and retries in the unlikely case that the writer overtook it.
+// Every reading is also written to a log with the monotonic time of `slow_control.dat'.
+class TemperatureSampler implements Runnable {
+  static double period = 1.; // s, between the starts of two readings
+  static final int capacity = 1 << 12; // readings kept, a power of two
+  static final int mask = capacity - 1;
+
+  final long[] ticks = new long[capacity]; // ns, middle of every reading
+  final double[] values = new double[capacity]; // deg C
+  volatile long count = 0; // readings so far, slot count & mask is the next one
+
+  String fname;
+  BufferedWriter writer;
+  long origin; // ns, monotonic time zero
+  Multimeter dmm = null;
+  Thread thread = null;
+  volatile boolean running = false;
+  volatile InstrumentException failure = null; // of the sampling thread, raised to the readers
+  volatile PhaseMetrics metrics = null; // durations of the readings are recorded as DMM if set
+
+  // on resume, the readings are appended to the existing log
+  TemperatureSampler(String fname, String settings, long origin, boolean resume) {
+    this.fname = fname;
+    this.origin = origin;
+    resume = resume && new File(fname).exists();
+    try {
+      writer = new BufferedWriter(new FileWriter(fname, resume));
+      if (!resume)
+        writer.write(settings + "# monotonic time [s], temperature [deg C], duration of the reading [s]\n");
+      writer.flush();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't create file `" + fname + "'.");
+      System.exit(1);
+    }
+  }
+
+  // the first reading is taken right away, such that there is always one to interpolate from
+  void Start(Multimeter dmm) throws InstrumentException {
+    this.dmm = dmm;
+    failure = null;
+    Sample();
+    running = true;
+    thread = new Thread(this, "temperature sampler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void run() {
+    long next = System.nanoTime();
+    while (running) {
+      next += (long) (period * 1e9);
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        try {
+          Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        } catch (InterruptedException e) {
+          break; // stopped
+        }
+      } else
+        next = System.nanoTime(); // readings take longer than the period, they follow each other directly
+      try {
+        Sample();
+      } catch (InstrumentException e) {
+        if (running)
+          failure = e;
+        break;
+      }
+    }
+  }
+
+  void Sample() throws InstrumentException {
+    long start = System.nanoTime();
+    double value = dmm.FetchData();
+    long tick = start + (System.nanoTime() - start) / 2;
+    long n = count;
+    ticks[(int) (n & mask)] = tick;
+    values[(int) (n & mask)] = value;
+    count = n + 1; // publishes the slot
+
+    if (metrics != null)
+      metrics.Record(PhaseMetrics.Phase.DMM, dmm.readTime);
+    try {
+      writer.write(String.format(Locale.ROOT, "%.3f\t\t%s\t\t%.3f\n", (tick - origin) * 1e-9, value, dmm.readTime));
+      writer.flush();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    }
+  }
+
+  // deg C at the given System.nanoTime(), interpolated between the readings around it,
+  // the latest reading if there is none after it yet
+  double Temperature(long tick) throws InstrumentException {
+    InstrumentException e = failure;
+    if (e != null)
+      throw new InstrumentException(e.getMessage(), e);
+
+    while (true) {
+      long n = count;
+      long lowest = Math.max(n - capacity + 1, 0); // the oldest slot is the next one to be overwritten
+      long j = n - 1;
+      while (j > lowest && ticks[(int) (j & mask)] > tick)
+        j--;
+      double value;
+      long t0 = ticks[(int) (j & mask)];
+      double v0 = values[(int) (j & mask)];
+      if (j == n - 1 || tick <= t0)
+        value = v0; // beyond the readings kept or the latest one
+      else {
+        long t1 = ticks[(int) ((j+1) & mask)];
+        double v1 = values[(int) ((j+1) & mask)];
+        value = t1 == t0 ? v1 : v0 + (v1 - v0) * (tick - t0) / (t1 - t0);
+      }
+      VarHandle.acquireFence(); // the slots are read before the count is checked again
+      if (count - capacity < j) // none of the slots read has been overwritten meanwhile
+        return value;
+    }
+  }
+
+  // deg C, the latest reading
+  double Latest() throws InstrumentException {
+    return Temperature(Long.MAX_VALUE);
+  }
+
+  // waits for the reading in progress
+  void Stop() {
+    running = false;
+    if (thread == null)
+      return;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      // the thread is a daemon
+    }
+    thread = null;
+  }
+
+  // after a failure, the reading in progress is broken off
+  void Abort() {
+    running = false;
+    if (dmm != null)
+      dmm.Abort();
+    Stop();
+    failure = null;
+  }
+
+  void CleanUp() {
+    Stop();
+    try {
+      writer.close();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,287 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Single file of fixed-size trace records in little-endian byte order, appended during the test.
+//
+// header: magic "CAVTRACE", version, header size, record size, capacity of a record in doubles,
+//         length of the settings text, the settings text as in `slow_control.dat', zero padding
+// record: indicator, X index, Z index, number of doubles (ints), time in ms since epoch (long),
+//         temperature, center frequency in MHz, span in kHz (doubles),
+//         interleaved real and imaginary parts (doubles), zero padding up to the capacity
+//
+// The records are written on the schedule of `slow_control.dat', every SlowControlLog.records records
+// or SlowControlLog.interval ms, and forced to the disk with it, such that both files agree after a crash.
+class TraceArchive {
+  static final byte[] magic = "CAVTRACE".getBytes(StandardCharsets.US_ASCII);
+  static final int version = 1;
+  static final int recordHead = 48; // bytes in front of the trace
+  static final int bufferSize = 1 << 16; // bytes collected at most before they are written
+
+  String fname;
+  FileChannel channel;
+  ByteBuffer buffer;
+  int capacity; // doubles per record
+  int recordSize, headerSize; // bytes
+  long records = 0; // in the file and in the buffer
+  int unflushed = 0; // records in the buffer
+  long lastFlush = System.nanoTime();
+  ScheduledExecutorService timer; // flushes the records of a stalled test
+
+  TraceArchive(String fname, String settings, int capacity) {
+    this(fname, settings, capacity, false);
+  }
+
+  // on resume, the complete records of an existing archive with the same settings are kept
+  TraceArchive(String fname, String settings, int capacity, boolean resume) {
+    this.fname = fname;
+    this.capacity = capacity;
+    recordSize = recordHead + 8*capacity;
+    byte[] text = settings.getBytes(StandardCharsets.UTF_8);
+    headerSize = (28 + text.length + 7) / 8 * 8;
+    buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, Math.max(recordSize, headerSize))).order(ByteOrder.LITTLE_ENDIAN);
+
+    buffer.put(magic).putInt(version).putInt(headerSize).putInt(recordSize).putInt(capacity).putInt(text.length).put(text);
+    while (buffer.position() < headerSize)
+      buffer.put((byte) 0);
+
+    Path path = Paths.get(fname);
+    // an archive which died before its header was complete holds no record, it is started anew
+    if (resume && Files.exists(path) && Size(path) >= headerSize) {
+      try {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer existing = ByteBuffer.allocate(headerSize);
+        channel.read(existing, 0);
+        existing.flip();
+        buffer.flip();
+        if (!existing.equals(buffer)) {
+          System.err.println("Error! The settings of `" + fname + "' differ from the present ones.");
+          System.exit(1);
+        }
+        records = (channel.size() - headerSize) / recordSize; // an incomplete record at the end is dropped
+        channel.truncate(End());
+        channel.position(End());
+      } catch (IOException e) {
+        System.err.println("Error! Couldn't open file `" + fname + "' to resume.");
+        System.exit(1);
+      }
+      buffer.clear();
+      Schedule();
+      return;
+    }
+
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't create file `" + fname + "'.");
+      System.exit(1);
+    }
+    Flush(); // the header right away, a crash before the first records still leaves an archive to resume
+    Schedule();
+  }
+
+  void Schedule() {
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "trace archive flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    int interval = SlowControlLog.interval;
+    timer.scheduleWithFixedDelay(() -> Expire(), interval, Math.max(interval / 4, 1), TimeUnit.MILLISECONDS);
+  }
+
+  static long Size(Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  // bytes, end of the records appended so far
+  long End() {
+    return headerSize + records * recordSize;
+  }
+
+  // returns the offset of the record in the file
+  synchronized long Append(int indicator, int xIndex, int zIndex, long time, double temperature, double center, double span, double[] data) {
+    if (data.length > capacity) {
+      System.err.println("Error! The trace doesn't fit into a record of `" + fname + "'.");
+      System.exit(1);
+    }
+    if (buffer.remaining() < recordSize)
+      Write(); // the schedule of the flushes is kept
+
+    buffer.putInt(indicator).putInt(xIndex).putInt(zIndex).putInt(data.length);
+    buffer.putLong(time).putDouble(temperature).putDouble(center).putDouble(span);
+    for (int i = 0; i < data.length; i++)
+      buffer.putDouble(data[i]);
+    for (int i = data.length; i < capacity; i++)
+      buffer.putDouble(0.);
+
+    records++;
+    unflushed++;
+    long offset = End() - recordSize;
+    if (unflushed >= SlowControlLog.records || (System.nanoTime() - lastFlush) * 1e-6 >= SlowControlLog.interval)
+      Flush();
+    return offset;
+  }
+
+  // records which waited the interval are written without another one being appended
+  synchronized void Expire() {
+    if (unflushed > 0 && (System.nanoTime() - lastFlush) * 1e-6 >= SlowControlLog.interval)
+      Flush();
+  }
+
+  synchronized void Flush() {
+    if (!channel.isOpen())
+      return;
+    Write();
+    try {
+      if (SlowControlLog.sync)
+        channel.force(false);
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    }
+    unflushed = 0;
+    lastFlush = System.nanoTime();
+  }
+
+  // the buffer to the file
+  void Write() {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    }
+    buffer.clear();
+  }
+
+  synchronized void CleanUp() {
+    timer.shutdown();
+    Flush();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+      System.exit(1);
+    }
+  }
+
+  // random access to the records of an archive through memory mapping
+  static class Reader {
+    String settings;
+    int capacity, recordSize, headerSize;
+    long size; // number of records
+    int perSegment; // records per mapped segment
+    MappedByteBuffer[] segments;
+    Map<Long, Long> index = null; // (indicator, X index, Z index) -> record
+
+    Reader(String fname) throws IOException {
+      try (FileChannel channel = FileChannel.open(Paths.get(fname), StandardOpenOption.READ)) {
+        ByteBuffer head = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(head, 0);
+        head.flip();
+        byte[] word = new byte[magic.length];
+        head.get(word);
+        if (!Arrays.equals(word, magic) || head.getInt() != version)
+          throw new IOException("`" + fname + "' is not a trace archive");
+        headerSize = head.getInt();
+        recordSize = head.getInt();
+        capacity = head.getInt();
+        ByteBuffer text = ByteBuffer.allocate(head.getInt());
+        channel.read(text, 28);
+        settings = new String(text.array(), StandardCharsets.UTF_8);
+
+        size = (channel.size() - headerSize) / recordSize; // an incomplete record at the end is ignored
+        perSegment = Integer.MAX_VALUE / recordSize;
+        segments = new MappedByteBuffer[(int) ((size + perSegment - 1) / perSegment)];
+        for (int s = 0; s < segments.length; s++) {
+          long records = Math.min(perSegment, size - (long) s * perSegment);
+          segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + (long) s * perSegment * recordSize, records * recordSize);
+          segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+      }
+    }
+
+    long Size() {
+      return size;
+    }
+
+    String Settings() {
+      return settings;
+    }
+
+    ByteBuffer Segment(long n) {
+      return segments[(int) (n / perSegment)];
+    }
+
+    int Offset(long n) {
+      return (int) (n % perSegment) * recordSize;
+    }
+
+    int Indicator(long n) {
+      return Segment(n).getInt(Offset(n));
+    }
+
+    int XIndex(long n) {
+      return Segment(n).getInt(Offset(n) + 4);
+    }
+
+    int ZIndex(long n) {
+      return Segment(n).getInt(Offset(n) + 8);
+    }
+
+    int Length(long n) {
+      return Segment(n).getInt(Offset(n) + 12);
+    }
+
+    long Time(long n) {
+      return Segment(n).getLong(Offset(n) + 16);
+    }
+
+    double Temperature(long n) {
+      return Segment(n).getDouble(Offset(n) + 24);
+    }
+
+    double Center(long n) {
+      return Segment(n).getDouble(Offset(n) + 32);
+    }
+
+    double Span(long n) {
+      return Segment(n).getDouble(Offset(n) + 40);
+    }
+
+    double[] Trace(long n) {
+      ByteBuffer segment = Segment(n);
+      int offset = Offset(n) + recordHead;
+      double[] data = new double[Length(n)];
+      for (int i = 0; i < data.length; i++)
+        data[i] = segment.getDouble(offset + 8*i);
+      return data;
+    }
+
+    // latest record of the given indicator and grid coordinates, -1 if there is none
+    long Find(int indicator, int xIndex, int zIndex) {
+      if (index == null) {
+        index = new HashMap<Long, Long>();
+        for (long n = 0; n < size; n++)
+          index.put(Key(Indicator(n), XIndex(n), ZIndex(n)), n);
+      }
+      Long n = index.get(Key(indicator, xIndex, zIndex));
+      return n == null ? -1 : n;
+    }
+
+    static long Key(int indicator, int xIndex, int zIndex) {
+      return ((long) indicator << 42) | ((long) xIndex << 21) | zIndex;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+// Output of the traces shared by the tests, either a text file per trace or the single archive,
+// and the live fit of every transmission trace written to resonance.dat.
+class TraceRecorder {
+  VectorNetworkAnalyzer.Config vna;
+  TraceArchive archive = null;
+  ResonanceFitter fitter = new ResonanceFitter();
+  BufferedWriter resonance = null; // fit of every transmission trace
+  File directory = null; // of all files, null = the working directory
+
+  // output is TEXT or ARCHIVE, labels names the leading columns of resonance.dat
+  TraceRecorder(String output, String settings, String labels, VectorNetworkAnalyzer.Config vna) {
+    this(output, settings, labels, vna, false);
+  }
+
+  // on resume, the existing files are appended to
+  TraceRecorder(String output, String settings, String labels, VectorNetworkAnalyzer.Config vna, boolean resume) {
+    this(output, settings, labels, vna, resume, null);
+  }
+
+  TraceRecorder(String output, String settings, String labels, VectorNetworkAnalyzer.Config vna, boolean resume, File directory) {
+    this.vna = vna;
+    this.directory = directory;
+    if (output.equals("ARCHIVE"))
+      archive = new TraceArchive(Path("traces.arc"), settings, 2*vna.point*vna.Measurements().length, resume);
+    if (vna.Transmission()) {
+      resume = resume && new File(Path("resonance.dat")).exists();
+      try {
+        resonance = new BufferedWriter(new FileWriter(Path("resonance.dat"), resume));
+        if (!resume)
+          resonance.write("# " + labels + ", " + ResonanceFitter.Columns() + "\n");
+      } catch (IOException e) {
+        System.err.println("Error! Couldn't create file `" + Path("resonance.dat") + "'.");
+        System.exit(1);
+      }
+    }
+  }
+
+  String Path(String fname) {
+    return new File(directory, fname).getPath();
+  }
+
+  // the file name is only used for text output, the indices only for the archive,
+  // returns the offset of the record in the archive or -1 for text output
+  long Trace(String fname, int indicator, int xIndex, int zIndex, long time, double temperature, double[] data) {
+    if (archive != null)
+      return archive.Append(indicator, xIndex, zIndex, time, temperature, vna.center, vna.span, data);
+
+    fname = Path(fname);
+    FileWriter f = null;
+    try {
+      f = new FileWriter(fname);
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't create file `" + fname + "'.");
+      System.exit(1);
+    }
+
+    try {
+      // the acquisition rather than the file, which an interpolated reference is written long after
+      f.write("# time of acquisition [ms since epoch]     " + time + '\n');
+      f.write("# temperature [deg C]                      " + temperature + '\n');
+      int n = data.length / 2 / vna.Measurements().length;
+      for (int i = 0; i < n; i++) {
+        for (int k = 2*i; k < data.length; k += 2*n)
+          f.write((k > 2*i ? "\t\t" : "") + data[k] + "\t\t" + data[k+1]); // real, imaginary of every measurement
+        f.write('\n');
+      }
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + fname + "'.");
+      System.exit(1);
+    }
+
+    try {
+      f.close();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+      System.exit(1);
+    }
+
+    return -1;
+  }
+
+  // fit the resonance live, only called by one thread at a time
+  void Resonance(String label, double[] data) {
+    if (resonance == null)
+      return;
+    int n = data.length / 2 / vna.Measurements().length;
+    fitter.Fit(data, n * vna.Primary(), n, vna.center, vna.span);
+    try {
+      resonance.write(label + '\t' + fitter.Result() + '\n');
+      resonance.flush();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't write to file `" + Path("resonance.dat") + "'.");
+      System.exit(1);
+    }
+  }
+
+  // on resume, the fits of the traces which are measured again are removed, such that every label
+  // keeps a single line
+  void Prune(Predicate<String> remeasured) {
+    if (resonance == null)
+      return;
+    String fname = Path("resonance.dat");
+    List<String> lines = new ArrayList<String>();
+    try {
+      resonance.close();
+      BufferedReader reader = new BufferedReader(new FileReader(fname));
+      for (String line; (line = reader.readLine()) != null; )
+        if (line.startsWith("#") || line.isEmpty() || !remeasured.test(line))
+          lines.add(line);
+      reader.close();
+      resonance = new BufferedWriter(new FileWriter(fname));
+      for (String line : lines)
+        resonance.write(line + '\n');
+      resonance.flush();
+    } catch (IOException e) {
+      System.err.println("Error! Couldn't rewrite file `" + fname + "'.");
+      System.exit(1);
+    }
+  }
+
+  void CleanUp() {
+    if (archive != null)
+      archive.CleanUp();
+    if (resonance != null) {
+      try {
+        resonance.close();
+      } catch (IOException e) {
+        System.err.println("Error! Couldn't close file `" + Path("resonance.dat") + "' properly.");
+        System.exit(1);
+      }
+    }
+  }
+}
@@ -0,0 +1,514 @@
+import java.nio.*;
+import java.util.*;
+
+class VectorNetworkAnalyzer {
+  // settings of a test, given to the driver rather than kept in statics of it
+  static class Config implements Cloneable {
+    double center = 682.; // MHz
+    double span = 150.; // kHz
+    int point = 801;
+    double bandwidth = 1.; // kHz
+    double power = 0.; // dBm
+    int average = 10;
+    String measurement = "S21"; // s-parameters separated by commas, all of them are taken in every sweep
+    String host = "192.168.254.2";
+    int port = 5025;
+    int timeout = 60000; // ms, allowance for a reply, sweeps with average included
+    String calibration = "MOST_20150726_930_540000.cal"; // on the local disk of the analyzer, to be replaced in every test
+    double pause = 1.; // s, before every acquisition unless settling is enabled
+    String format = "ASCII"; // trace transfer, ASCII, REAL32 or REAL64
+    double tolerance = 0.; // kHz, convergence of the resonance in quick sweeps, 0 = fixed pause
+    double settleMax = 10.; // s, upper limit of settling
+    double precision = 0.; // kHz, standard error of the resonance for averaging on the host, 0 = on the analyzer
+    int minSweeps = 2; // sweeps averaged on the host at least, `average' at most
+
+    String[] Measurements() {
+      return measurement.split(",");
+    }
+
+    // the resonance is followed in the first transmission, or in the first reflection without any
+    int Primary() {
+      String[] measurements = Measurements();
+      for (int k = 0; k < measurements.length; k++)
+        if (measurements[k].equals("S21") || measurements[k].equals("S12"))
+          return k;
+      return 0;
+    }
+
+    boolean Transmission() {
+      String primary = Measurements()[Primary()];
+      return primary.equals("S21") || primary.equals("S12");
+    }
+
+    Config Copy() {
+      try {
+        return (Config) clone();
+      } catch (CloneNotSupportedException e) {
+        throw new AssertionError(e); // all fields are values
+      }
+    }
+  }
+
+  Config config;
+  Config applied; // settings the analyzer holds, as they were sent last
+  boolean single = false; // single sweeps or zero-span ones rather than those of the configuration
+  ScpiTransport scpi;
+  double settleTime = 0.; // s, settling before the last acquisition
+  int settleSweeps = 0; // quick sweeps before the last acquisition
+  double settleSum = 0., settleLongest = 0.; // s, statistics over all acquisitions
+  int settleNum = 0;
+  double[] spread = new double[0]; // sum of squared deviations per trace point, reused
+  int sweeps = 0; // sweeps averaged on the host for the last acquisition
+  double sweepTime = 0.; // s, duration of the last acquisition after settling
+  long sweepNanos, transferNanos, parseNanos; // breakdown of the last acquisition, summed over its sweeps
+  String query = "CALC:DATA? SDAT"; // all traces of the channel if there are several
+  boolean armed = false; // the following sweep was initiated by the previous one
+  long armedTick; // ns, initiation of the armed sweep
+  long sweepStart, sweepEnd; // ns, initiation of the latest sweep and the answer to *OPC?, late if it was armed and over before
+  int[] slot = null; // position of every trace of the reply in the measurements, null if they agree
+
+  VectorNetworkAnalyzer(Config config) throws InstrumentException {
+    this.config = config;
+    scpi = new ScpiTransport("the vector network analyzer", config.host, config.port, config.timeout);
+
+    Queue("@REM"); // invoke remote mode
+    Queue("*RST;*WAI;*CLS"); // reset everything
+    String[] measurements = config.Measurements();
+    Traces(measurements);
+    Queue("INIT:CONT OFF"); // single sweep
+    Queue("SWE:COUN " + (config.precision > 0 ? 1 : config.average));
+    Queue("SWE:POIN " + config.point);
+    Queue("AVER:COUN " + config.average);
+    Queue(config.precision > 0 ? "AVER OFF" : "AVER ON");
+    Queue("BAND " + config.bandwidth + "KHZ");
+    Queue("FREQ:CENT " + config.center + "MHZ");
+    Queue("FREQ:SPAN " + config.span + "KHZ");
+    Queue("SOUR:POW " + config.power);
+    if (!config.format.equals("ASCII")) {
+      Queue("FORM REAL," + config.format.substring(4)); // IEEE 754 floating-point numbers
+      Queue("FORM:BORD SWAP"); // little-endian byte order
+    }
+    Queue("MMEM:LOAD:CORR 1,'" + config.calibration + "'");
+
+    Send("*WAI;SYST:ERR:ALL?"); // the whole preset leaves in a single write
+    String error = Receive();
+    if (!error.equals("0,\"No error\""))
+      throw new InstrumentException("Couldn't preset the vector network analyzer: " + error);
+    if (measurements.length > 1) {
+      query = "CALC:DATA:CALL? SDAT";
+      Catalog(measurements);
+    }
+    applied = config.Copy();
+    System.out.println("the vector network analyzer is ready");
+  }
+
+  void Traces(String[] measurements) throws InstrumentException {
+    Queue("CALC:PAR:MEAS 'TRC1','" + measurements[0] + "'");
+    for (int k = 1; k < measurements.length; k++)
+      Queue("CALC:PAR:SDEF 'TRC" + (k+1) + "','" + measurements[k] + "'"); // further traces in the same channel
+  }
+
+  // another configuration in the same session, only the settings which differ from the ones the
+  // analyzer holds are sent, the calibration is loaded again only if it is another file
+  void Update(Config next) throws InstrumentException {
+    Disarm();
+    config = next;
+    int changes = 0;
+    if (single) {
+      LinearSweep(); // with the sweep of the new configuration
+      applied.center = next.center;
+      applied.span = next.span;
+      applied.point = next.point;
+      applied.average = next.average;
+      applied.precision = next.precision;
+      changes++;
+    }
+    if (!next.measurement.equals(applied.measurement)) {
+      for (int k = 1; k < applied.Measurements().length; k++)
+        Queue("CALC:PAR:DEL 'TRC" + (k+1) + "'");
+      Traces(next.Measurements());
+      Queue("CALC:PAR:SEL 'TRC1'");
+      changes++;
+    }
+    if (next.point != applied.point) {
+      Queue("SWE:POIN " + next.point);
+      changes++;
+    }
+    if (next.average != applied.average || (next.precision > 0) != (applied.precision > 0)) {
+      Queue("SWE:COUN " + (next.precision > 0 ? 1 : next.average));
+      Queue("AVER:COUN " + next.average);
+      Queue(next.precision > 0 ? "AVER OFF" : "AVER ON");
+      changes++;
+    }
+    if (next.bandwidth != applied.bandwidth) {
+      Queue("BAND " + next.bandwidth + "KHZ");
+      changes++;
+    }
+    if (next.center != applied.center) {
+      Queue("FREQ:CENT " + next.center + "MHZ");
+      changes++;
+    }
+    if (next.span != applied.span) {
+      Queue("FREQ:SPAN " + next.span + "KHZ");
+      changes++;
+    }
+    if (next.power != applied.power) {
+      Queue("SOUR:POW " + next.power);
+      changes++;
+    }
+    if (!next.format.equals(applied.format)) {
+      if (next.format.equals("ASCII"))
+        Queue("FORM ASC");
+      else {
+        Queue("FORM REAL," + next.format.substring(4));
+        Queue("FORM:BORD SWAP");
+      }
+      changes++;
+    }
+    if (!next.calibration.equals(applied.calibration)) {
+      Queue("MMEM:LOAD:CORR 1,'" + next.calibration + "'");
+      changes++;
+    }
+
+    Send("*WAI;SYST:ERR:ALL?");
+    String error = Receive();
+    if (!error.equals("0,\"No error\""))
+      throw new InstrumentException("Couldn't update the settings of the vector network analyzer: " + error);
+    String[] measurements = next.Measurements();
+    query = measurements.length > 1 ? "CALC:DATA:CALL? SDAT" : "CALC:DATA? SDAT";
+    slot = null;
+    if (measurements.length > 1)
+      Catalog(measurements);
+    applied = next.Copy();
+    System.out.println(String.format("the vector network analyzer kept its state, %d settings changed", changes));
+  }
+
+  // order of the traces in the reply of CALC:DATA:CALL?
+  void Catalog(String[] measurements) throws InstrumentException {
+    String reply = scpi.Query("CALC:DATA:CALL:CAT?");
+    String[] catalog = reply.replace("'", "").replace("\"", "").split(",");
+    List<String> requested = Arrays.asList(measurements);
+    if (catalog.length != measurements.length)
+      throw new InstrumentException("Couldn't set up the traces of the vector network analyzer: " + reply);
+    slot = new int[catalog.length];
+    boolean agree = true;
+    for (int k = 0; k < catalog.length; k++) {
+      slot[k] = requested.indexOf(catalog[k].trim());
+      if (slot[k] < 0)
+        throw new InstrumentException("Couldn't set up the traces of the vector network analyzer: " + reply);
+      agree &= slot[k] == k;
+    }
+    if (agree)
+      slot = null;
+  }
+
+  void Send(String cmd) throws InstrumentException {
+    scpi.Send(cmd);
+  }
+
+  // leaves with the next command sent
+  void Queue(String cmd) throws InstrumentException {
+    scpi.Queue(cmd);
+  }
+
+  String Receive() throws InstrumentException {
+    return scpi.Receive();
+  }
+
+  // new window of the following sweeps, center in MHz, span in kHz, at most the points of the start
+  // since the trace buffers are sized by them; the calibration is interpolated by the analyzer
+  void Retune(double center, double span, int point) throws InstrumentException {
+    config.center = applied.center = center;
+    config.span = applied.span = span;
+    Queue("FREQ:CENT " + center + "MHZ");
+    Queue("FREQ:SPAN " + span + "KHZ");
+    if (point != config.point) {
+      config.point = applied.point = point;
+      Queue("SWE:POIN " + point);
+    }
+    scpi.Flush();
+  }
+
+  // zero-span sweeps at a fixed frequency in MHz, `point' samples spread over `time' s, single and without average
+  void ContinuousWave(double frequency, int point, double time) throws InstrumentException {
+    single = true;
+    Queue("SWE:TYPE CW");
+    Queue("FREQ:CW " + frequency + "MHZ");
+    Queue("SWE:POIN " + point);
+    Queue("SWE:TIME " + time + "S");
+    Queue("SWE:COUN 1");
+    Send("AVER OFF");
+  }
+
+  void Shift(double frequency) throws InstrumentException {
+    Disarm();
+    Send("FREQ:CW " + frequency + "MHZ");
+  }
+
+  // single frequency sweeps without average, taken at once when they are initiated
+  void SingleSweep() throws InstrumentException {
+    Disarm();
+    single = true;
+    Queue("SWE:COUN 1");
+    Send("AVER OFF");
+  }
+
+  // back to the frequency sweeps of the configuration
+  void LinearSweep() throws InstrumentException {
+    Disarm();
+    single = false;
+    Queue("SWE:TYPE LIN");
+    Queue("FREQ:CENT " + config.center + "MHZ");
+    Queue("FREQ:SPAN " + config.span + "KHZ");
+    Queue("SWE:POIN " + config.point);
+    Queue("SWE:TIME:AUTO ON");
+    Queue("SWE:COUN " + (config.precision > 0 ? 1 : config.average));
+    Send(config.precision > 0 ? "AVER OFF" : "AVER ON");
+  }
+
+  // a single zero-span sweep, accounted like an acquisition without settling, the following one is
+  // initiated ahead if `next'
+  double[] FetchStream(boolean next) throws InstrumentException {
+    settleTime = 0.;
+    sweepNanos = transferNanos = parseNanos = 0;
+    long start = System.nanoTime();
+    double[] data = Sweep(next);
+    sweepTime = (System.nanoTime() - start) * 1e-9;
+    return data;
+  }
+
+  double[] FetchData() throws InstrumentException {
+    if (config.tolerance > 0)
+      Settle();
+    else {
+      long start = System.nanoTime();
+      try {
+        Thread.sleep((long) (1000 * config.pause));
+      } catch (InterruptedException e) {
+        throw new InstrumentException("Couldn't settle the cavity before fetching data.", e);
+      }
+      settleTime = (System.nanoTime() - start) * 1e-9;
+    }
+
+    sweepNanos = transferNanos = parseNanos = 0;
+    long start = System.nanoTime();
+    double[] data;
+    if (config.precision > 0)
+      data = Average();
+    else {
+      Queue("AVER:CLE"); // clean previous frames
+      data = Sweep();
+    }
+    sweepTime = (System.nanoTime() - start) * 1e-9;
+
+    return data;
+  }
+
+  // Welford's running mean and variance over single sweeps, stopped once the resonance is precise enough
+  double[] Average() throws InstrumentException {
+    double[] mean = null;
+    double resonance = 0., resonanceSpread = 0., error = Double.POSITIVE_INFINITY;
+
+    for (sweeps = 1; sweeps <= config.average; sweeps++) {
+      double[] trace = Sweep(sweeps < config.average);
+      if (mean == null) {
+        mean = new double[trace.length];
+        if (spread.length != trace.length)
+          spread = new double[trace.length];
+        Arrays.fill(spread, 0.);
+      }
+      for (int i = 0; i < trace.length; i++) {
+        double delta = trace[i] - mean[i];
+        mean[i] += delta / sweeps;
+        spread[i] += delta * (trace[i] - mean[i]);
+      }
+
+      double current = Resonance(trace);
+      double delta = current - resonance;
+      resonance += delta / sweeps;
+      resonanceSpread += delta * (current - resonance);
+      if (sweeps > 1)
+        error = Math.sqrt(resonanceSpread / (sweeps - 1) / sweeps);
+      if (sweeps >= config.minSweeps && error < config.precision)
+        break;
+    }
+    Disarm();
+    sweeps = Math.min(sweeps, config.average);
+    System.out.println(String.format("averaged %d sweeps, resonance known to %.3f kHz", sweeps, error));
+
+    return mean;
+  }
+
+  double[] Sweep() throws InstrumentException {
+    return Sweep(false);
+  }
+
+  // the end of the sweep is awaited with *OPC?, which leaves the parser of the analyzer free unlike *WAI,
+  // so with `next' the following sweep is initiated as soon as the data arrived and runs while it is decoded
+  double[] Sweep(boolean next) throws InstrumentException {
+    long start = System.nanoTime();
+    if (!armed)
+      Queue("INIT"); // initiate a new cycle
+    String complete = scpi.Query("*OPC?");
+    if (!complete.trim().equals("1"))
+      throw new InstrumentException("Couldn't complete the sweep of the vector network analyzer: " + complete);
+    long done = scpi.replyTick;
+    sweepStart = armed ? armedTick : start;
+    sweepEnd = done;
+    armed = false;
+    Send(query);
+    double[] trace;
+    if (config.format.equals("ASCII")) {
+      String data = Receive();
+      long received = System.nanoTime();
+      Arm(next);
+      trace = Arrange(ParseAscii(data));
+      Account(start, done, received);
+    } else {
+      ByteBuffer data = scpi.ReceiveBlock();
+      long received = System.nanoTime();
+      Arm(next);
+      trace = Arrange(Decode(data));
+      Account(start, done, received);
+    }
+
+    return trace;
+  }
+
+  void Arm(boolean next) throws InstrumentException {
+    if (next) {
+      Send("INIT");
+      armedTick = System.nanoTime();
+      armed = true;
+    }
+  }
+
+  // a sweep initiated ahead but not needed anymore is aborted before the settings change or the cavity moves
+  void Disarm() throws InstrumentException {
+    if (armed) {
+      Send("ABOR");
+      armed = false;
+    }
+  }
+
+  // the traces are kept one after another in the order of the measurements, each with interleaved parts
+  double[] Arrange(double[] data) {
+    if (slot == null)
+      return data;
+    int length = data.length / slot.length;
+    double[] arranged = new double[data.length];
+    for (int k = 0; k < slot.length; k++)
+      System.arraycopy(data, k*length, arranged, slot[k]*length, length);
+    return arranged;
+  }
+
+  // the host waits for the sweep until *OPC? is answered, an armed sweep has partly passed by then
+  void Account(long start, long done, long received) {
+    sweepNanos += done - start;
+    transferNanos += received - done;
+    parseNanos += System.nanoTime() - received;
+  }
+
+  // quick single sweeps without average until two consecutive resonances agree within the tolerance
+  void Settle() throws InstrumentException {
+    long start = System.nanoTime();
+    double previous = Double.NaN, current;
+    double elapsed = 0.;
+
+    if (config.precision == 0) { // otherwise the analyzer stays in single sweeps anyway
+      Queue("SWE:COUN 1");
+      Queue("AVER OFF");
+    }
+    settleSweeps = 0;
+    do {
+      current = Resonance(Sweep(true));
+      settleSweeps++;
+      elapsed = (System.nanoTime() - start) * 1e-9;
+      if (Math.abs(current - previous) < config.tolerance)
+        break;
+      previous = current;
+    } while (elapsed < config.settleMax);
+    Disarm();
+    if (elapsed >= config.settleMax)
+      System.out.println(String.format("the cavity didn't settle within %.1f s", config.settleMax));
+    if (config.precision == 0) {
+      Queue("SWE:COUN " + config.average);
+      Queue("AVER ON");
+    }
+
+    settleTime = elapsed;
+    settleSum += elapsed;
+    settleLongest = Math.max(settleLongest, elapsed);
+    settleNum++;
+    System.out.println(String.format("settled in %.2f s with %d sweeps", settleTime, settleSweeps));
+  }
+
+  // kHz, offset of the resonance from the center, weighted by the points beyond half maximum
+  double Resonance(double[] trace) {
+    int n = trace.length / 2 / config.Measurements().length;
+    int o = 2 * n * config.Primary(); // first value of the trace followed
+    boolean transmission = config.Transmission();
+    double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      double amp = trace[o+2*i]*trace[o+2*i] + trace[o+2*i+1]*trace[o+2*i+1];
+      min = Math.min(min, amp);
+      max = Math.max(max, amp);
+    }
+
+    double sum = 0., weighted = 0.;
+    for (int i = 0; i < n; i++) {
+      double amp = trace[o+2*i]*trace[o+2*i] + trace[o+2*i+1]*trace[o+2*i+1];
+      double w = transmission ? amp - (max + min)/2 : (max + min)/2 - amp; // peak or dip
+      if (w <= 0)
+        continue;
+      sum += w;
+      weighted += w * (-config.span/2 + config.span * i / (n==1 ? 1 : n-1));
+    }
+
+    return sum > 0 ? weighted / sum : 0.;
+  }
+
+  double[] ParseAscii(String data) throws InstrumentException {
+    String[] values = data.split(",");
+    double[] trace = new double[values.length];
+
+    try {
+      for (int i = 0; i < values.length; i++)
+        trace[i] = Double.parseDouble(values[i]);
+    } catch (NumberFormatException e) {
+      throw new InstrumentException("Couldn't parse trace data from the vector network analyzer.", e);
+    }
+
+    return trace;
+  }
+
+  // binary block of IEEE 754 floating-point numbers in little-endian byte order
+  double[] ReceiveBlock() throws InstrumentException {
+    return Decode(scpi.ReceiveBlock());
+  }
+
+  double[] Decode(ByteBuffer bb) {
+    int size = config.format.equals("REAL32") ? 4 : 8;
+    double[] trace = new double[bb.remaining() / size];
+    if (size == 4)
+      for (int i = 0; i < trace.length; i++)
+        trace[i] = bb.getFloat();
+    else
+      for (int i = 0; i < trace.length; i++)
+        trace[i] = bb.getDouble();
+
+    return trace;
+  }
+
+  void CleanUp() throws InstrumentException {
+    if (settleNum > 0)
+      System.out.println(String.format("settling took %.2f s on average and %.2f s at most", settleSum/settleNum, settleLongest));
+    Send("@LOC"); // set to local mode
+    scpi.Close();
+  }
+
+  // after a failure, nothing is sent anymore
+  void Abort() {
+    scpi.Abort();
+  }
+}
@@ -0,0 +1,8 @@
+// invalid option or value on the command line or in a line of the job file
+class ArgumentException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    ArgumentException() {
+        super();
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.*;
+import java.util.*;
+
+// Many scans in one session of the instruments. Every line of the job file names the directory of the
+// output of a scan and the options in which it differs from the command line, so an overnight series
+// of grids, frequencies, powers and s-parameters pays the initialization of the motor, the preset of
+// the analyzer and the calibration only once; between the jobs the analyzer only gets the settings
+// which differ from the ones it holds. All jobs are parsed before the first one starts, such that a
+// mistake in the file shows up right away rather than in the middle of the night. With -resume, every
+// job continues from its journal, and the jobs already complete merely rewrite their field maps.
+class Campaign {
+    static String fname = null; // jobs, null = a single scan with the options of the command line
+    static final List<String> options = Arrays.asList("-xi", "-xf", "-xn", "-zi", "-zf", "-zn", "-r", "-c", "-s", "-n", "-t", "-pw"); // with a value each
+
+    static class Job {
+        final int line;
+        final File directory;
+        final String[] args;
+
+        Job(int line, File directory, String[] args) {
+            this.line = line;
+            this.directory = directory;
+            this.args = args;
+        }
+    }
+
+    List<Job> jobs = new ArrayList<Job>();
+    // settings of the command line, every job starts from them
+    double xInitl, xFinal, zInitl, zFinal, zRef;
+    int xNum, zNum;
+    VectorNetworkAnalyzer.Config vna;
+    boolean resume;
+
+    Campaign(String fname) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fname))) {
+            String line;
+            Set<String> directories = new HashSet<String>();
+            for (int n = 1; (line = reader.readLine()) != null; n++) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] tokens = line.split("\\s+");
+                String[] args = Arrays.copyOfRange(tokens, 1, tokens.length);
+                boolean valid = args.length % 2 == 0 && directories.add(tokens[0]);
+                for (int k = 0; k < args.length; k += 2)
+                    valid &= options.contains(args[k]);
+                if (!valid) {
+                    System.err.println(String.format("Error! Line %d of `%s' ought to be a new directory followed by pairs of options of %s and values.", n, fname, options));
+                    System.exit(1);
+                }
+                jobs.add(new Job(n, new File(tokens[0]), args));
+            }
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't read file `" + fname + "'.");
+            System.exit(1);
+        }
+        if (jobs.isEmpty()) {
+            System.err.println("Error! There is no job in file `" + fname + "'.");
+            System.exit(1);
+        }
+
+        xInitl = DynamicTest.xInitl;
+        xFinal = DynamicTest.xFinal;
+        xNum = DynamicTest.xNum;
+        zInitl = DynamicTest.zInitl;
+        zFinal = DynamicTest.zFinal;
+        zNum = DynamicTest.zNum;
+        zRef = DynamicTest.zRef;
+        vna = DynamicTest.vna.Copy();
+        resume = DynamicTest.resume;
+        for (Job job : jobs)
+            Apply(job);
+    }
+
+    // the settings of the command line changed by the options of the job
+    void Apply(Job job) {
+        DynamicTest.xInitl = xInitl;
+        DynamicTest.xFinal = xFinal;
+        DynamicTest.xNum = xNum;
+        DynamicTest.zInitl = zInitl;
+        DynamicTest.zFinal = zFinal;
+        DynamicTest.zNum = zNum;
+        DynamicTest.zRef = zRef;
+        DynamicTest.vna = vna.Copy(); // the analyzer compares it with the one it holds
+        try {
+            Parser.Parse(job.args);
+        } catch (ArgumentException e) {
+            System.err.println(String.format("Error! Line %d of `%s' has an invalid value.", job.line, fname));
+            System.exit(1);
+        }
+        DynamicTest.resume = resume && new File(job.directory, "journal.dat").exists();
+        DynamicTest.directory = job.directory;
+    }
+
+    void Run() {
+        long start = System.nanoTime();
+        for (int k = 0; k < jobs.size(); k++) {
+            Job job = jobs.get(k);
+            Apply(job);
+            if (!job.directory.isDirectory() && !job.directory.mkdirs()) {
+                System.err.println("Error! Couldn't create directory `" + job.directory + "'.");
+                System.exit(1);
+            }
+            System.out.println(String.format("job %d of %d in `%s' %s", k + 1, jobs.size(), job.directory, String.join(" ", job.args)));
+            long begin = System.nanoTime();
+            DynamicTest.Run();
+            System.out.println(String.format("job %d of %d took %.1f min", k + 1, jobs.size(), (System.nanoTime() - begin) * 1e-9 / 60.));
+        }
+        System.out.println(String.format("campaign of %d jobs took %.1f min", jobs.size(), (System.nanoTime() - start) * 1e-9 / 60.));
+    }
+}
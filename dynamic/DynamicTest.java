@@ -8,6 +8,7 @@
 import java.io.*;
 import java.util.*;
 import java.text.*;
+import java.util.concurrent.*;
 
 public class DynamicTest {
     static double xInitl = -45.; // mm, initial coordinate of X in pipe system
@@ -17,57 +18,275 @@ public class DynamicTest {
     static double zFinal = 55.; // mm, final coordinate of Z in pipe system
     static int zNum = 23; // number of measurements in Z
     static double zRef = 100.; // mm, two-sided reference coordinates of Z
-    static String timestamp = "1970-01-01 00:00:00";
+    static String output = "TEXT"; // TEXT file per trace or one ARCHIVE
+    static VectorNetworkAnalyzer.Config vna = new VectorNetworkAnalyzer.Config();
+    static Multimeter.Config dmm = new Multimeter.Config();
+    static MotorController.Config motion = new MotorController.Config();
+    static TraceRecorder recorder;
+    static SlowControlLog log;
+    static PhaseMetrics metrics;
+    static ScanJournal journal;
+    static FieldMap map = null; // built with the references of transmission measurements
+    static FlyScan fly = null; // lines of Z run without stopping
+    static boolean resume = false; // continue the scan recorded in journal.dat
+    static File directory = null; // of the output, null = the working directory
+    static int retries = 3; // reconnections before the scan is given up
+    static int pause = 10; // s, before reconnecting
+    static double temperature = 23.; // during the latest sweep
+    static DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    static MotorController isel; // displace the cavity
+    static VectorNetworkAnalyzer rohde; // s-parameter measurement
+    static Multimeter agilent; // temperature monitoring
+    static TemperatureSampler sampler; // readings of the multimeter aside of the sweeps
+    static ExecutorService writer = Executors.newSingleThreadExecutor(); // persistence during movements
 
     public static void main(String[] args) {
+        vna.calibration = "MOST_20150729_679.6_350.cal";
+        vna.pause = 0.1; // the cavity barely warms up during a movement
         try {
             Parser.Parse(args);
         } catch (ArgumentException e) {
             printHelp();
             System.exit(1);
         }
-        RecordSlowControl(23, true);
-
-        MotorController isel = new MotorController(); // displace the cavity
-        VectorNetworkAnalyzer rohde = new VectorNetworkAnalyzer(); // s-parameter measurement
-        Multimeter agilent = new Multimeter(); // temperature monitoring
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        Calendar rightNow = Calendar.getInstance();
-        String begin = dateFormat.format(rightNow.getTime());
-        rightNow.add(Calendar.SECOND, 41*xNum*zNum);
-        String end = dateFormat.format(rightNow.getTime());
-        System.out.println("measurement begins at " + begin);
-        System.out.println("It will approximately end around " + end);
-
-        int i, j;
-        double xPos, xMove;
-        double xIncre = (xFinal - xInitl) / (xNum==1 ? 1 : xNum-1);
-        double zPos, zMove, zMoveRef;
-        double zIncre = (zFinal - zInitl) / (zNum==1 ? 1 : zNum-1);
-        for (i = 0, xPos = xInitl; i < xNum; i++, xPos += xIncre) {
-            xMove = -xPos;
-            for (j = 0, zPos = zInitl; j < zNum; j++, zPos += zIncre) {
-                if (zRef >= 0) {
-                    zMoveRef = zPos>0 ? zRef : -zRef;
-                    isel.Move(xMove, zMoveRef);
-                    System.out.println(String.format("%03d, %03d, ref", i, j));
-                    rightNow = Calendar.getInstance();
-                    timestamp = dateFormat.format(rightNow.getTime());
-                    RecordSlowControl(agilent.FetchData(), false);
-                    RecordTrace(0, i, j, rohde.FetchData()); // 0 = reference
+        if (Campaign.fname != null)
+            new Campaign(Campaign.fname).Run();
+        else
+            Run();
+        Close();
+    }
+
+    // a scan with the present settings, the instruments stay connected afterwards
+    static void Run() {
+        if (writer.isShutdown())
+            writer = Executors.newSingleThreadExecutor();
+        metrics = null;
+        map = null;
+        fly = null;
+        log = new SlowControlLog(Path("slow_control.dat"), Settings(), resume);
+        recorder = new TraceRecorder(output, Settings(), "indicator, X index, Z index", vna, resume, directory);
+        sampler = new TemperatureSampler(Path("temperature.dat"), Settings(), log.start, resume);
+        journal = new ScanJournal(Path("journal.dat"), Settings(), resume, recorder.archive != null ? recorder.archive.End() : Long.MAX_VALUE);
+        if (resume)
+            recorder.Prune(line -> {
+                String[] v = line.split("\t");
+                return Remeasured(Integer.parseInt(v[0]), Integer.parseInt(v[1]), Integer.parseInt(v[2]));
+            });
+        if (zRef >= 0 && vna.Transmission()) {
+            map = new FieldMap(xNum, zNum);
+            if (resume && new File(Path("resonance.dat")).exists())
+                map.Load(Path("resonance.dat"));
+        }
+
+        Retry(() -> { // connect, or carry on with the session of the previous scan
+            if (rohde.config != vna)
+                rohde.Update(vna);
+            if (!sampler.running)
+                sampler.Start(agilent);
+        });
+        System.out.println("measurement begins at " + dateFormat.format(new Date()));
+
+        ReferencePolicy policy = new ReferencePolicy();
+        if (FlyScan.Enabled()) {
+            if (GridRefiner.Enabled()) {
+                System.err.println("Error! The grid can't be refined on the fly, every line covers all points of Z.");
+                System.exit(1);
+            }
+            fly = new FlyScan(Path("fly_scan.dat"), Settings(), resume);
+            fly.Scan();
+        } else if (GridRefiner.Enabled()) {
+            if (map == null) {
+                System.err.println("Error! Refining the grid needs the shifts of transmission measurements with references.");
+                System.exit(1);
+            }
+            // every level is on the disk and in the field map before the next one is chosen
+            GridRefiner refiner = new GridRefiner(xNum, zNum);
+            for (boolean[] level = refiner.Coarse(); level != null; level = refiner.Refine(map)) {
+                Scan(level, policy);
+                Drain();
+            }
+        } else
+            Scan(null, policy);
+        Finish();
+    }
+
+    // the cavity returns to the origin and the instruments to local operation
+    static void Close() {
+        try {
+            isel.CleanUp();
+            rohde.CleanUp();
+            agilent.CleanUp();
+        } catch (InstrumentException e) {
+            System.err.println("Error! " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // file of the present scan
+    static String Path(String fname) {
+        return new File(directory, fname).getPath();
+    }
+
+    // whether a resumed scan measures the trace again, as decided by Scan and FlyScan.Scan
+    static boolean Remeasured(int indicator, int xIndex, int zIndex) {
+        if (!journal.Done(indicator, xIndex, zIndex))
+            return true;
+        if (FlyScan.Enabled())
+            return !FlyScan.Complete(xIndex);
+        return indicator == 1 && ReferencePolicy.Scheduled() && !journal.Done(0, xIndex, zIndex);
+    }
+
+    // the selected points of the grid, all if null, with their references
+    static void Scan(boolean[] selected, final ReferencePolicy policy) {
+        final boolean scheduled = ReferencePolicy.Scheduled();
+        List<ScanPlanner.Step> steps = ScanPlanner.Plan(ScanPlanner.order, zRef >= 0 && !scheduled, selected);
+        System.out.println(String.format("scan path takes %.1f min of motion (%.1f min in raster order)",
+                ScanPlanner.MotionTime(steps)/60., ScanPlanner.MotionTime(ScanPlanner.Plan(ScanPlanner.Order.RASTER, zRef >= 0, selected))/60.));
+        List<ScanPlanner.Step> missing = new ArrayList<ScanPlanner.Step>();
+        for (ScanPlanner.Step step : steps) {
+            // a perturbation is only complete together with its reference, which may have been interpolated
+            if (!journal.Done(step.indicator, step.xIndex, step.zIndex) || (scheduled && !journal.Done(0, step.xIndex, step.zIndex)))
+                missing.add(step);
+        }
+        if (resume)
+            System.out.println(String.format("resuming with %d of %d points missing", missing.size(), steps.size()));
+        if (metrics == null) {
+            metrics = new PhaseMetrics(Path("metrics.dat"), missing.size());
+            sampler.metrics = metrics;
+        } else
+            metrics.total += missing.size();
+
+        ScanPlanner.Step last = null;
+        for (final ScanPlanner.Step step : missing) {
+            Retry(() -> {
+                if (scheduled && policy.Due(temperature)) {
+                    isel.Move(step.x, step.z>0 ? zRef : -zRef);
+                    System.out.println(String.format("%03d, %03d, ref, moved in %.1f s", step.xIndex, step.zIndex, isel.moveTime));
+                    policy.Reference(step.xIndex, step.zIndex, Acquire(0, step.xIndex, step.zIndex), temperature);
                 }
-                zMove = zPos;
-                isel.Move(xMove, zMove);
-                System.out.println(String.format("%03d, %03d, pert", i, j));
-                rightNow = Calendar.getInstance();
-                timestamp = dateFormat.format(rightNow.getTime());
-                RecordSlowControl(agilent.FetchData(), false);
-                RecordTrace(1, i, j, rohde.FetchData()); // 1 = perturbation
+                isel.Move(step.x, step.z);
+                System.out.println(String.format("%03d, %03d, %s, moved in %.1f s", step.xIndex, step.zIndex,
+                        step.indicator==0 ? "ref" : "pert", isel.moveTime));
+                Acquire(step.indicator, step.xIndex, step.zIndex); // 0 = reference, 1 = perturbation
+            });
+            if (scheduled)
+                policy.Perturbation(step.xIndex, step.zIndex);
+            metrics.Point();
+            last = step;
+        }
+        if (scheduled && policy.Pending() && last != null) { // closing reference, it serves the last point directly
+            final ScanPlanner.Step step = last;
+            Retry(() -> {
+                isel.Move(step.x, step.z>0 ? zRef : -zRef);
+                System.out.println(String.format("%03d, %03d, ref, moved in %.1f s", step.xIndex, step.zIndex, isel.moveTime));
+                policy.Reference(step.xIndex, step.zIndex, Acquire(0, step.xIndex, step.zIndex), temperature);
+            });
+        }
+    }
+
+    // waits for the records of the trace measured last
+    static void Drain() {
+        try {
+            writer.submit(() -> {}).get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Error! Couldn't finish writing the records.");
+            System.exit(1);
+        }
+    }
+
+    interface Task {
+        void Run() throws InstrumentException;
+    }
+
+    // a failed task is carried out again after all instruments have been connected anew, which
+    // also sends the motor to its reference position, and the scan is given up after `retries' attempts
+    static void Retry(Task task) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (agilent == null)
+                    Connect();
+                task.Run();
+                return;
+            } catch (InstrumentException e) {
+                System.err.println("Error! " + e.getMessage());
+                Disconnect();
+                if (attempt >= retries) {
+                    Finish();
+                    System.err.println("Error! Gave up after " + retries + " attempts to reconnect, run again with -resume to continue the scan.");
+                    System.exit(1);
+                }
+            }
+            System.out.println(String.format("reconnecting in %d s, attempt %d of %d", pause, attempt + 1, retries));
+            try {
+                Thread.sleep(1000L * pause);
+            } catch (InterruptedException e) {
+                System.err.println("Error! Couldn't wait for the instruments to recover.");
+                System.exit(1);
             }
         }
-        isel.CleanUp();
-        rohde.CleanUp();
-        agilent.CleanUp();
+    }
+
+    static void Connect() throws InstrumentException {
+        isel = new MotorController(motion);
+        rohde = new VectorNetworkAnalyzer(vna);
+        agilent = new Multimeter(dmm);
+        sampler.Start(agilent);
+    }
+
+    static void Disconnect() {
+        if (isel != null)
+            isel.Abort();
+        if (rohde != null)
+            rohde.Abort();
+        if (agilent != null)
+            sampler.Abort(); // together with the multimeter
+        isel = null;
+        rohde = null;
+        agilent = null;
+    }
+
+    // everything measured so far goes to the disk
+    static void Finish() {
+        sampler.CleanUp();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS); // pending records
+        } catch (InterruptedException e) {
+            System.err.println("Error! Couldn't finish writing the records.");
+            System.exit(1);
+        }
+        if (map != null)
+            map.Snapshot();
+        recorder.CleanUp();
+        log.CleanUp();
+        journal.CleanUp();
+        if (fly != null)
+            fly.CleanUp();
+        if (metrics != null)
+            metrics.CleanUp();
+    }
+
+    // only the movement and the sweep are exclusive, the temperature is sampled aside
+    // and the records are written while the cavity is heading to the next position
+    static double[] Acquire(final int indicator, final int xIndex, final int zIndex) throws InstrumentException {
+        final long time = System.currentTimeMillis();
+        final long tick = System.nanoTime();
+        final String stamp = dateFormat.format(new Date(time));
+        final double move = isel.moveTime;
+        metrics.Record(PhaseMetrics.Phase.MOVE, move);
+        final double[] data = rohde.FetchData();
+        metrics.Record(rohde);
+        final double sample = sampler.Temperature(System.nanoTime() - (long) (rohde.sweepTime * 5e8)); // middle of the sweep
+        temperature = sample;
+        final double sweep = rohde.sweepTime;
+        writer.execute(() -> {
+            long start = System.nanoTime();
+            log.Record(stamp, sample, move, sweep, tick);
+            RecordTrace(indicator, xIndex, zIndex, time, sample, data);
+            metrics.Record(PhaseMetrics.Phase.WRITE, System.nanoTime() - start);
+        });
+
+        return data;
     }
 
     static void printHelp() {
@@ -84,87 +303,79 @@ public class DynamicTest {
                 "\n-c\tcenter frequency in MHz" +
                 "\n-s\tspan in kHz" +
                 "\n-n\tnumber of trace points" +
-                "\n-t\ttype of measurement, select from {S11, S21, S12, S22}" +
+                "\n-t\ttypes of measurement separated by commas, all taken in the same sweep, select from {S11, S21, S12, S22}" +
+                "\n-f\tformat of trace transfer, select from {ASCII, REAL32, REAL64}" +
+                "\n-st\ttolerance of the resonance in kHz for settling with quick sweeps (0 means a fixed pause)" +
+                "\n-sm\tmaximum settling time in s" +
+                "\n-e\tstandard error of the resonance in kHz for averaging single sweeps on the host (0 means averaging on the analyzer)" +
+                "\n-em\tminimum number of sweeps averaged on the host" +
+                "\n-o\toutput of traces, select from {TEXT, ARCHIVE}" +
+                "\n-lr\tnumber of lines after which slow_control.dat is flushed" +
+                "\n-lt\tinterval in ms after which slow_control.dat is flushed" +
+                "\n-ls\tforce slow_control.dat to the disk on every flush, select from {ON, OFF}" +
+                "\n-vna\taddress of the vector network analyzer as host:port" +
+                "\n-dmm\taddress of the multimeter as host:port" +
+                "\n-dp\tperiod in s of the temperature readings, taken aside of the sweeps and logged in temperature.dat" +
+                "\n-bk\tform factor of the bead in mm^3 for the field map, e.g. pi r^3 of a metallic sphere (0 means |E|^2 relative to its maximum)" +
+                "\n-fi\tinterval in s between snapshots of the field map to field_map.dat and shunt_impedance.dat (0 means only at the end)" +
+                "\n-mc\taddress of the motor controller as host:port" +
+                "\n-p\torder of scan path, select from {RASTER, SERPENTINE, GROUPED, NEAREST}" +
+                "\n-rp\tpolicy of reference measurements, select from {POINT, COUNT, TIME, TEMPERATURE}" +
+                "\n-rl\tlimit of the reference policy in points, s or degrees (references in between are interpolated)" +
+                "\n-rt\tnumber of attempts to reconnect to the instruments before the scan is given up" +
+                "\n-resume\tcontinue the scan recorded in journal.dat with the same settings" +
+                "\n-tol\ttolerance in kHz of the spread of the shifts in a cell of the grid, coarser cells are refined (0 means the full grid)" +
+                "\n-ab\tbudget of points for refining the grid (0 means no limit)" +
+                "\n-ac\tgrid indices between two points of the coarse grid before refining" +
+                "\n-fly\tspeed of Z in mm/s for lines scanned on the fly, with single sweeps timed to the points and references on either side (0 means stop and go)" +
+                "\n-fr\trun-up in mm before the first point and after the last one of a line on the fly" +
+                "\n-pw\tpower in dBm" +
+                "\n-campaign\tfile of jobs, one per line with the directory of its output followed by options of {-xi, -xf, -xn, -zi, -zf, -zn, -r, -c, -s, -n, -t, -pw}," +
+                "\n\t\twhich change the ones given here; the instruments stay connected from one job to the next" +
+                "\n-mi\tinterval in s between summaries of the latencies, also written to metrics.dat (0 means only at the end)" +
                 "\n\ndefault setting is equivalent to:" +
-                "\njava -jar DynamicTest.jar -xi -45 -xf 45 -xn 19 -zi -55 -zf 55 -zn 23 -r 100 -c 682 -s 150 -n 801 -t S21");
+                "\njava -jar DynamicTest.jar -xi -45 -xf 45 -xn 19 -zi -55 -zf 55 -zn 23 -r 100 -c 682 -s 150 -n 801 -t S21 -f ASCII -st 0 -sm 10 -e 0 -em 2 -o TEXT -lr 10 -lt 5000 -ls ON -vna 192.168.254.2:5025 -dmm 192.168.254.4:5025 -mc 192.168.254.254:2001 -p RASTER -rp POINT -rl 5 -rt 3 -mi 60 -dp 1 -bk 0 -fi 60 -tol 0 -ab 0 -ac 4 -fly 0 -fr 0 -pw 0");
     }
 
-    static void RecordSlowControl(double temperature, boolean initial) {
-        FileWriter f = null;
-        try {
-            if (initial)
-                f = new FileWriter("slow_control.dat"); // write to a new file
-            else
-                f = new FileWriter("slow_control.dat", true); // append to the existing file
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't create file `slow_control.dat'.");
-            System.exit(1);
-        } 
-
-        if (initial) {
-            try {
-                f.write("# initial coordinate of X [mm]             " + xInitl + '\n' +
-                        "# final coordinate of X [mm]               " + xFinal + '\n' +
-                        "# number of measurements in X              " + xNum + '\n' +
-                        "# initial coordinate of Z [mm]             " + zInitl + '\n' +
-                        "# final coordinate of Z [mm]               " + zFinal + '\n' +
-                        "# number of measurements in Z              " + zNum + '\n' +
-                        "# number of trace points                   " + VectorNetworkAnalyzer.point + '\n' +
-                        "# center frequency [MHz]                   " + VectorNetworkAnalyzer.center + '\n' +
-                        "# span [kHz]                               " + VectorNetworkAnalyzer.span + '\n' +
-                        "# reference coordinate of Z [mm]           " + zRef + '\n' +
-                        "# (2-sided, negative means no reference)   " + '\n' +
-                        "# movement speed in X [mm/s]               " + MotorController.xSpeed/320. + '\n' +
-                        "# movement speed in Z [mm/s]               " + MotorController.zSpeed/320. + '\n' +
-                        "# power [dBm]                              " + VectorNetworkAnalyzer.power + '\n' +
-                        "# number of acquisitions for average       " + VectorNetworkAnalyzer.average + '\n' +
-                        "# bandwidth of intermediate filter [kHz]   " + VectorNetworkAnalyzer.bandwidth + '\n' +
-                        "# type of measurement                      " + VectorNetworkAnalyzer.measurement + '\n');
-            } catch (IOException e) {
-                System.err.println("Error! Couldn't write to file `slow_control.dat'.");
-                System.exit(1);
-            }
-        } else {
-            try {
-                f.write(timestamp + "\t\t" + temperature + '\n');
-            } catch (IOException e) {
-                System.err.println("Error! Couldn't write to file `slow_control.dat'.");
-                System.exit(1);
-            }
-        }
-
-        try {
-            f.close();
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't close file `slow_control.dat' properly.");
-            System.exit(1);
-        }
+    static String Settings() {
+        return "# initial coordinate of X [mm]             " + xInitl + '\n' +
+                "# final coordinate of X [mm]               " + xFinal + '\n' +
+                "# number of measurements in X              " + xNum + '\n' +
+                "# initial coordinate of Z [mm]             " + zInitl + '\n' +
+                "# final coordinate of Z [mm]               " + zFinal + '\n' +
+                "# number of measurements in Z              " + zNum + '\n' +
+                "# number of trace points                   " + vna.point + '\n' +
+                "# center frequency [MHz]                   " + vna.center + '\n' +
+                "# span [kHz]                               " + vna.span + '\n' +
+                "# reference coordinate of Z [mm]           " + zRef + '\n' +
+                "# (2-sided, negative means no reference)   " + '\n' +
+                "# movement speed in X [mm/s]               " + motion.xSpeed/320. + '\n' +
+                "# movement speed in Z [mm/s]               " + motion.zSpeed/320. + '\n' +
+                "# power [dBm]                              " + vna.power + '\n' +
+                "# number of acquisitions for average       " + vna.average + '\n' +
+                "# bandwidth of intermediate filter [kHz]   " + vna.bandwidth + '\n' +
+                "# type of measurement                      " + vna.measurement + '\n' +
+                "# format of trace transfer                 " + vna.format + '\n' +
+                "# tolerance of settling [kHz]              " + vna.tolerance + '\n' +
+                "# precision of averaging on host [kHz]     " + vna.precision + '\n' +
+                "# output of traces                         " + output + '\n' +
+                "# order of scan path                       " + ScanPlanner.order + '\n' +
+                "# policy of reference measurements         " + ReferencePolicy.mode + '\n' +
+                "# limit of reference policy                " + ReferencePolicy.limit + '\n' +
+                "# period of temperature readings [s]       " + TemperatureSampler.period + '\n' +
+                "# form factor of the bead [mm^3]           " + FieldMap.bead + '\n' +
+                "# tolerance of refinement [kHz]            " + GridRefiner.tolerance + '\n' +
+                "# stride of the coarse grid                " + GridRefiner.stride + '\n' +
+                "# speed of Z on the fly [mm/s]             " + FlyScan.speed + '\n' +
+                "# run-up on the fly [mm]                   " + FlyScan.runup + '\n';
     }
 
-    static void RecordTrace(int indicator, int xIndex, int zIndex, String[] data) {
-        FileWriter f = null;
-        String fname = "";
-        try {
-            fname = String.format("%d_%03d_%03d.dat", indicator, xIndex, zIndex);
-            f = new FileWriter(fname);
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't create file `" + fname + "'.");
-            System.exit(1);
-        }
-
-        try {
-            for (int i = 0; i < data.length/2; i++)
-                f.write(data[2*i] + "\t\t" + data[2*i+1] + '\n'); // real, imaginary
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't write to file `" + fname + "'.");
-            System.exit(1);
-        }
-
-        try {
-            f.close();
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't close file `" + fname + "' properly.");
-            System.exit(1);
-        }
+    // text file, fit and journal line of a measured or interpolated trace, only called on the writer
+    static void RecordTrace(int indicator, int xIndex, int zIndex, long time, double temperature, double[] data) {
+        long offset = recorder.Trace(String.format("%d_%03d_%03d.dat", indicator, xIndex, zIndex), indicator, xIndex, zIndex, time, temperature, data);
+        recorder.Resonance(String.format("%d\t%03d\t%03d", indicator, xIndex, zIndex), data);
+        journal.Record(indicator, xIndex, zIndex, offset);
+        if (map != null)
+            map.Add(indicator, xIndex, zIndex, recorder.fitter.f0, recorder.fitter.q);
     }
 }
@@ -0,0 +1,146 @@
+import java.io.*;
+import java.util.*;
+
+// Field profile built while the scan is running. Every fitted trace enters a grid of resonant
+// frequencies, and once a perturbation and its reference are both known, the shift gives the field
+// by Slater's perturbation theorem, df / f0 = -k eps0 |E|^2 / U, with the form factor k of the bead
+// (pi r^3 for a small metallic sphere on the axis of an electric field). Integrating |E| / sqrt(U)
+// along Z then gives R/Q = V^2 / (2 pi f0 U) of every X, and the shunt impedance with the loaded Q of
+// the references. The grid and the impedances are rewritten every `interval' seconds, together with a
+// line on the console, such that a region which went wrong shows up long before the scan ends.
+class FieldMap {
+    static double bead = 0.; // mm^3, form factor of the bead, 0 = |E|^2 relative to its maximum
+    static double interval = 60.; // s, between two snapshots
+    static final double eps0 = 8.8541878128e-12; // F/m
+
+    int xNum, zNum;
+    double[] reference, perturbation, quality; // kHz, kHz, loaded Q, per point X index * zNum + Z index, NaN if unknown
+    int failed = 0; // fits without result
+    long lastSnapshot = System.nanoTime();
+
+    FieldMap(int xNum, int zNum) {
+        this.xNum = xNum;
+        this.zNum = zNum;
+        reference = new double[xNum * zNum];
+        perturbation = new double[xNum * zNum];
+        quality = new double[xNum * zNum];
+        Arrays.fill(reference, Double.NaN);
+        Arrays.fill(perturbation, Double.NaN);
+        Arrays.fill(quality, Double.NaN);
+    }
+
+    // fits of an interrupted scan from resonance.dat, in the columns written by TraceRecorder
+    void Load(String fname) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fname))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#"))
+                    continue;
+                String[] v = line.split("\t");
+                Add(Integer.parseInt(v[0]), Integer.parseInt(v[1]), Integer.parseInt(v[2]), Double.parseDouble(v[3]), Double.parseDouble(v[8]));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error! Couldn't read file `" + fname + "' to resume the field map.");
+            System.exit(1);
+        }
+    }
+
+    // only called by the writer, right after the fit of the trace
+    void Add(int indicator, int xIndex, int zIndex, double f0, double q) {
+        int k = xIndex * zNum + zIndex;
+        if (Double.isNaN(f0)) {
+            failed++;
+            return;
+        }
+        if (indicator == 0) {
+            reference[k] = f0;
+            quality[k] = q;
+        } else
+            perturbation[k] = f0;
+        if (interval > 0 && (System.nanoTime() - lastSnapshot) * 1e-9 >= interval)
+            Snapshot();
+    }
+
+    // kHz, shift of the perturbation against its reference, NaN unless both are known
+    double Shift(int k) {
+        return perturbation[k] - reference[k];
+    }
+
+    // V^2/m^2/J, or relative to the largest value without the form factor of the bead
+    double[] Field() {
+        double[] field = new double[xNum * zNum];
+        double max = 0.;
+        for (int k = 0; k < field.length; k++) {
+            field[k] = -Shift(k) / reference[k];
+            if (bead > 0)
+                field[k] /= 1e-9 * bead * eps0;
+            if (field[k] > max)
+                max = field[k];
+        }
+        if (bead == 0 && max > 0)
+            for (int k = 0; k < field.length; k++)
+                field[k] /= max;
+        return field;
+    }
+
+    void Snapshot() {
+        lastSnapshot = System.nanoTime();
+        double[] field = Field();
+        double xIncre = (DynamicTest.xFinal - DynamicTest.xInitl) / (xNum==1 ? 1 : xNum-1);
+        double zIncre = (DynamicTest.zFinal - DynamicTest.zInitl) / (zNum==1 ? 1 : zNum-1);
+        int known = 0, largest = -1;
+
+        try (BufferedWriter f = new BufferedWriter(new FileWriter(DynamicTest.Path("field_map.dat")))) {
+            f.write("# X index, Z index, X [mm], Z [mm], f0 of the reference [kHz], shift [kHz], " +
+                    (bead > 0 ? "|E|^2/U [V^2/m^2/J]" : "|E|^2 relative to the maximum") + '\n');
+            for (int i = 0; i < xNum; i++)
+                for (int j = 0; j < zNum; j++) {
+                    int k = i * zNum + j;
+                    if (Double.isNaN(field[k]))
+                        continue;
+                    known++;
+                    if (largest < 0 || Math.abs(Shift(k)) > Math.abs(Shift(largest)))
+                        largest = k;
+                    f.write(String.format(Locale.ROOT, "%03d\t%03d\t%.3f\t%.3f\t%.3f\t%.3f\t%.6e\n", i, j,
+                            DynamicTest.xInitl + i * xIncre, DynamicTest.zInitl + j * zIncre, reference[k], Shift(k), field[k]));
+                }
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't write to file `" + DynamicTest.Path("field_map.dat") + "'.");
+            System.exit(1);
+        }
+
+        try (BufferedWriter f = new BufferedWriter(new FileWriter(DynamicTest.Path("shunt_impedance.dat")))) {
+            f.write("# X index, X [mm], points along Z, R/Q [Ohm], shunt impedance with the loaded Q [Ohm]\n");
+            for (int i = 0; i < xNum; i++) {
+                double voltage = 0., f0 = 0., q = 0.; // sqrt(J) V, kHz
+                int n = 0;
+                // every known point weighs half the distance between its known neighbours, which
+                // leaves the plain sum on the full grid and follows the points of a refined one
+                for (int j = 0, previous = -1; j < zNum; j++) {
+                    int k = i * zNum + j;
+                    if (Double.isNaN(field[k]))
+                        continue;
+                    int next = j + 1;
+                    while (next < zNum && Double.isNaN(field[i * zNum + next]))
+                        next++;
+                    voltage += Math.sqrt(Math.max(field[k], 0.)) * 1e-3 * Math.abs(zIncre) * (next - previous) / 2.;
+                    f0 += reference[k];
+                    q += quality[k];
+                    previous = j;
+                    n++;
+                }
+                if (n == 0)
+                    continue;
+                double rq = bead > 0 ? voltage * voltage / (2 * Math.PI * 1e3 * f0 / n) : Double.NaN;
+                f.write(String.format(Locale.ROOT, "%03d\t%.3f\t%d\t%.3f\t%.1f\n", i, DynamicTest.xInitl + i * xIncre, n, rq, rq * q / n));
+            }
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't write to file `" + DynamicTest.Path("shunt_impedance.dat") + "'.");
+            System.exit(1);
+        }
+
+        if (largest >= 0)
+            System.out.println(String.format("field map of %d of %d points, %d fits failed, largest shift %.3f kHz at %03d, %03d",
+                    known, xNum * zNum, failed, Shift(largest), largest / zNum, largest % zNum));
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.*;
+import java.util.*;
+
+// Scan on the fly: the cavity runs every line of Z at a constant speed without stopping, serpentine from
+// one X to the next, whilst the analyzer takes single sweeps without average. Every sweep is initiated
+// such that its middle falls onto the time the bead passes a point of the grid, known from the start of
+// the movement and the commanded speed, and the trace keeps the indices of that point; the position at
+// the actual middle of the sweep is written to `fly_scan.dat' together with the travel during the sweep,
+// which smears the resonance and ought to stay well below the spacing. A reference is taken on either
+// side of the line at rest, and every point gets one interpolated from both to the time it was passed,
+// the same way as ReferencePolicy does. The motor reaches its speed within `runup' mm before the first
+// point, since the controller ramps it up.
+class FlyScan {
+    static double speed = 0.; // mm/s of Z on the fly, 0 = stop and go
+    static double runup = 0.; // mm, ahead of the first point and behind the last one
+
+    String fname;
+    BufferedWriter writer;
+    double worst = 0.; // mm, largest distance between a tagged position and its point
+    boolean warned = false;
+
+    static boolean Enabled() {
+        return speed > 0;
+    }
+
+    // on resume, the lines are appended to the existing log
+    FlyScan(String fname, String settings, boolean resume) {
+        this.fname = fname;
+        resume = resume && new File(fname).exists();
+        try {
+            writer = new BufferedWriter(new FileWriter(fname, resume));
+            if (!resume)
+                writer.write(settings + "# X index, Z index, Z of the point [mm], Z at the middle of the sweep [mm], travel during the sweep [mm], delay of the middle [ms]\n");
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't create file `" + fname + "'.");
+            System.exit(1);
+        }
+    }
+
+    // every point of the line with its reference in the journal
+    static boolean Complete(int xIndex) {
+        boolean ref = DynamicTest.zRef >= 0;
+        for (int j = 0; j < DynamicTest.zNum; j++)
+            if (!DynamicTest.journal.Done(1, xIndex, j) || (ref && !DynamicTest.journal.Done(0, xIndex, j)))
+                return false;
+        return true;
+    }
+
+    void Scan() {
+        int xNum = DynamicTest.xNum, zNum = DynamicTest.zNum;
+        List<Integer> missing = new ArrayList<Integer>();
+        for (int i = 0; i < xNum; i++)
+            if (!Complete(i))
+                missing.add(i); // the whole line is measured again
+        if (DynamicTest.resume)
+            System.out.println(String.format("resuming with %d of %d lines missing", missing.size(), xNum));
+        DynamicTest.metrics = new PhaseMetrics(DynamicTest.Path("metrics.dat"), missing.size() * zNum);
+        DynamicTest.sampler.metrics = DynamicTest.metrics;
+
+        for (final int i : missing)
+            DynamicTest.Retry(() -> Line(i, i % 2 == 1));
+        System.out.println(String.format("the positions of the sweeps were off their points by %.3f mm at most", worst));
+    }
+
+    void Line(int i, boolean backward) throws InstrumentException {
+        int xNum = DynamicTest.xNum, zNum = DynamicTest.zNum;
+        double xIncre = (DynamicTest.xFinal - DynamicTest.xInitl) / (xNum==1 ? 1 : xNum-1);
+        double zIncre = (DynamicTest.zFinal - DynamicTest.zInitl) / (zNum==1 ? 1 : zNum-1);
+        double x = -(DynamicTest.xInitl + i * xIncre); // the motor counts X the other way round
+        double zA = backward ? DynamicTest.zFinal : DynamicTest.zInitl, zB = backward ? DynamicTest.zInitl : DynamicTest.zFinal;
+        double direction = zB < zA ? -1. : 1.;
+        double zRef = DynamicTest.zRef;
+        MotorController isel = DynamicTest.isel;
+        VectorNetworkAnalyzer rohde = DynamicTest.rohde;
+        PhaseMetrics metrics = DynamicTest.metrics;
+
+        double[] before = null;
+        long beforeTick = 0;
+        double beforeTemperature = 0.;
+        if (zRef >= 0) {
+            rohde.LinearSweep();
+            isel.Move(x, zA>0 ? zRef : -zRef);
+            System.out.println(String.format("%03d, line, ref, moved in %.1f s", i, isel.moveTime));
+            metrics.Record(PhaseMetrics.Phase.MOVE, isel.moveTime);
+            before = rohde.FetchData();
+            metrics.Record(rohde);
+            beforeTick = System.nanoTime() - (long) (rohde.sweepTime * 5e8);
+            beforeTemperature = DynamicTest.sampler.Temperature(beforeTick);
+        }
+
+        // a sweep at rest before the line times the following ones
+        isel.Move(x, zA - direction * runup);
+        rohde.SingleSweep();
+        rohde.FetchStream(false);
+        long duration = rohde.sweepEnd - rohde.sweepStart;
+        int zSpeed = (int) Math.round(speed * MotorController.factor);
+        double velocity = (double) zSpeed / MotorController.factor; // mm/s, as commanded
+        double spacing = Math.abs(zIncre) / velocity; // s between two points
+        if (zNum > 1 && spacing < rohde.sweepTime && !warned) {
+            System.out.println(String.format("the sweeps take %.0f ms but the points pass every %.0f ms, they will lag behind",
+                    rohde.sweepTime * 1e3, spacing * 1e3));
+            warned = true;
+        }
+
+        long[] ticks = new long[zNum]; // ns, middle of the sweep of every point
+        long[] stamps = new long[zNum]; // ms since epoch
+        double length = Math.abs(zB - zA) + 2 * runup;
+        double lineWorst = 0.;
+        isel.Start(x, zB + direction * runup, zSpeed);
+        long origin = isel.moveStart;
+        for (int k = 0; k < zNum; k++) {
+            final int j = backward ? zNum-1-k : k;
+            double zPoint = DynamicTest.zInitl + j * zIncre;
+            long passing = origin + (long) ((Math.abs(zPoint - zA) + runup) / velocity * 1e9);
+            long wait = passing - duration / 2 - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    throw new InstrumentException("Couldn't wait for the bead to reach the next point.", e);
+                }
+            }
+
+            final long time = System.currentTimeMillis();
+            final String stamp = DynamicTest.dateFormat.format(new Date(time));
+            final double[] data = rohde.FetchStream(false);
+            metrics.Record(rohde);
+            final long middle = rohde.sweepStart + (rohde.sweepEnd - rohde.sweepStart) / 2;
+            double travel = Math.min(Math.max(velocity * (middle - origin) * 1e-9, 0.), length);
+            double z = zA + direction * (travel - runup);
+            lineWorst = Math.max(lineWorst, Math.abs(z - zPoint));
+            final double sample = DynamicTest.sampler.Temperature(middle);
+            DynamicTest.temperature = sample;
+            final double sweep = rohde.sweepTime;
+            final long tick = rohde.sweepStart;
+            final int xIndex = i;
+            DynamicTest.writer.execute(() -> {
+                long start = System.nanoTime();
+                DynamicTest.log.Record(stamp, sample, 0., sweep, tick);
+                DynamicTest.RecordTrace(1, xIndex, j, time, sample, data);
+                DynamicTest.metrics.Record(PhaseMetrics.Phase.WRITE, System.nanoTime() - start);
+            });
+            try {
+                writer.write(String.format(Locale.ROOT, "%03d\t%03d\t%.3f\t%.3f\t%.3f\t%.1f\n", i, j, zPoint, z,
+                        velocity * (rohde.sweepEnd - rohde.sweepStart) * 1e-9, (middle - passing) * 1e-6));
+            } catch (IOException e) {
+                System.err.println("Error! Couldn't write to file `" + fname + "'.");
+                System.exit(1);
+            }
+            ticks[j] = middle;
+            stamps[j] = time;
+            metrics.Point();
+        }
+        isel.Await();
+        metrics.Record(PhaseMetrics.Phase.MOVE, isel.moveTime);
+        worst = Math.max(worst, lineWorst);
+        System.out.println(String.format("%03d, line of %d points at %.1f mm/s in %.1f s, off by %.3f mm at most",
+                i, zNum, velocity, isel.moveTime, lineWorst));
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't write to file `" + fname + "'.");
+            System.exit(1);
+        }
+
+        if (zRef >= 0) {
+            rohde.LinearSweep();
+            isel.Move(x, zB>0 ? zRef : -zRef);
+            System.out.println(String.format("%03d, line, ref, moved in %.1f s", i, isel.moveTime));
+            metrics.Record(PhaseMetrics.Phase.MOVE, isel.moveTime);
+            double[] after = rohde.FetchData();
+            metrics.Record(rohde);
+            long afterTick = System.nanoTime() - (long) (rohde.sweepTime * 5e8);
+            double afterTemperature = DynamicTest.sampler.Temperature(afterTick);
+            double beforeResonance = ReferencePolicy.Resonance(before), afterResonance = ReferencePolicy.Resonance(after);
+            for (int j = 0; j < zNum; j++) {
+                double weight = (double) (ticks[j] - beforeTick) / (afterTick - beforeTick);
+                final double[] blend = ReferencePolicy.Interpolate(before, beforeResonance, after, afterResonance, weight);
+                final double blendTemperature = (1 - weight) * beforeTemperature + weight * afterTemperature;
+                final long stamp = stamps[j];
+                final int xIndex = i, zIndex = j;
+                DynamicTest.writer.execute(() -> DynamicTest.RecordTrace(0, xIndex, zIndex, stamp, blendTemperature, blend));
+            }
+        }
+    }
+
+    void CleanUp() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.*;
+
+// Adaptive scan on the grid of the test: a coarse grid of every `stride'-th index first, then the
+// cells whose shifts of the resonance spread by more than the tolerance are split at their middles,
+// the worst ones first, level by level until every cell is within the tolerance, can't be split
+// anymore or the budget of points is spent. The spread of a cell is the larger one of its corners and
+// of the excursion which the curvature around it suggests between them: the second differences of the
+// shifts at the corners, over the width of the cell in X and in Z, measure how far the field bends
+// away from the straight line through the corners, such that a peak or a valley gets refined although
+// its corners agree. After a split, the middles of a cell are the corners of its children and give
+// those second differences directly. A steep field is refined for its gradient, a curved one for its
+// curvature, and a flat one is left with the coarse points; a feature smaller than a coarse cell which
+// bends none of its corners stays unseen, so the stride ought to be chosen below the size of the
+// smallest expected feature. A cell which didn't fit into the budget is kept for the later levels, in
+// case a smaller one does. The points keep their indices in the full grid.
+class GridRefiner {
+    static double tolerance = 0.; // kHz, spread of the shifts in a cell, 0 = full grid
+    static int budget = 0; // perturbation points at most, 0 = no limit but the full grid
+    static int stride = 4; // grid indices between two points of the coarse grid
+
+    int xNum, zNum;
+    boolean[] selected; // planned so far
+    int count = 0;
+    List<int[]> cells = new ArrayList<int[]>(); // {X index, Z index, X index, Z index} of the corners
+
+    static boolean Enabled() {
+        return tolerance > 0;
+    }
+
+    GridRefiner(int xNum, int zNum) {
+        this.xNum = xNum;
+        this.zNum = zNum;
+        selected = new boolean[xNum * zNum];
+    }
+
+    // indices 0, stride, 2 stride, ... and the last one
+    static List<Integer> Coarse(int num) {
+        List<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0; i < num - 1; i += Math.max(stride, 1))
+            indices.add(i);
+        indices.add(num - 1);
+        return indices;
+    }
+
+    boolean[] Coarse() {
+        List<Integer> xs = Coarse(xNum), zs = Coarse(zNum);
+        boolean[] level = new boolean[xNum * zNum];
+        for (int i : xs)
+            for (int j : zs)
+                Select(level, i, j);
+        for (int a = 0; a < xs.size(); a++)
+            for (int b = 0; b < zs.size(); b++)
+                if ((a + 1 < xs.size() || xs.size() == 1) && (b + 1 < zs.size() || zs.size() == 1))
+                    cells.add(new int[] {xs.get(a), zs.get(b), xs.get(Math.min(a + 1, xs.size() - 1)), zs.get(Math.min(b + 1, zs.size() - 1))});
+        if (budget > 0 && count > budget)
+            System.out.println(String.format("the coarse grid of %d points already exceeds the budget of %d", count, budget));
+        System.out.println(String.format("coarse grid of %d points", count));
+        return level;
+    }
+
+    // points of the next level from the shifts measured so far, null once nothing is left to refine
+    boolean[] Refine(FieldMap map) {
+        final Map<int[], Double> spread = new HashMap<int[], Double>();
+        List<int[]> split = new ArrayList<int[]>();
+        int total = cells.size();
+        for (int[] cell : cells) {
+            double value = Spread(map, cell);
+            // a corner without a shift is a failed fit, refining there wouldn't tell more
+            if (value > tolerance && (cell[2] - cell[0] > 1 || cell[3] - cell[1] > 1)) {
+                spread.put(cell, value);
+                split.add(cell);
+            }
+        }
+        split.sort((a, b) -> Double.compare(spread.get(b), spread.get(a)));
+
+        boolean[] level = new boolean[xNum * zNum];
+        List<int[]> children = new ArrayList<int[]>();
+        int added = 0, refined = 0;
+        for (int[] cell : split) {
+            int xMid = (cell[0] + cell[2]) / 2, zMid = (cell[1] + cell[3]) / 2;
+            int[][] points = {{xMid, cell[1]}, {xMid, cell[3]}, {cell[0], zMid}, {cell[2], zMid}, {xMid, zMid}};
+            int fresh = 0;
+            for (int[] p : points)
+                if (!selected[p[0] * zNum + p[1]] && !level[p[0] * zNum + p[1]])
+                    fresh++;
+            if (budget > 0 && count + fresh > budget) {
+                children.add(cell); // a smaller cell may still fit, this one is tried again on the next level
+                continue;
+            }
+            for (int[] p : points)
+                Select(level, p[0], p[1]);
+            added += fresh;
+            refined++;
+            // a dimension which is only one index wide isn't split
+            int[][] xPairs = cell[2] - cell[0] > 1 ? new int[][] {{cell[0], xMid}, {xMid, cell[2]}} : new int[][] {{cell[0], cell[2]}};
+            int[][] zPairs = cell[3] - cell[1] > 1 ? new int[][] {{cell[1], zMid}, {zMid, cell[3]}} : new int[][] {{cell[1], cell[3]}};
+            for (int[] xs : xPairs)
+                for (int[] zs : zPairs)
+                    children.add(new int[] {xs[0], zs[0], xs[1], zs[1]});
+        }
+        cells = children;
+        if (added == 0)
+            return null;
+        System.out.println(String.format("refining %d of %d cells with %d points, %d points in total", refined, total, added, count));
+        return level;
+    }
+
+    // kHz, spread of the shifts at the corners or the excursion between them, whichever is larger;
+    // NaN if a corner has no shift
+    double Spread(FieldMap map, int[] cell) {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, bend = 0.;
+        int xWidth = cell[2] - cell[0], zWidth = cell[3] - cell[1];
+        for (int i : new int[] {cell[0], cell[2]})
+            for (int j : new int[] {cell[1], cell[3]}) {
+                double shift = map.Shift(i * zNum + j);
+                min = Math.min(min, shift);
+                max = Math.max(max, shift);
+                // a parabola with the second difference d over the width departs by d/8 from the chord in the middle
+                bend = Math.max(bend, Math.abs(Bend(map, i, j, xWidth, 0)) / 8);
+                bend = Math.max(bend, Math.abs(Bend(map, i, j, 0, zWidth)) / 8);
+            }
+        return Math.max(max - min, bend);
+    }
+
+    // second difference of the shifts at a point with the given steps, 0 unless both neighbours are measured
+    double Bend(FieldMap map, int i, int j, int xStep, int zStep) {
+        if (xStep == 0 && zStep == 0)
+            return 0.;
+        int iA = i - xStep, jA = j - zStep, iB = i + xStep, jB = j + zStep;
+        if (iA < 0 || jA < 0 || iB >= xNum || jB >= zNum || !selected[iA * zNum + jA] || !selected[iB * zNum + jB])
+            return 0.;
+        double d = map.Shift(iA * zNum + jA) - 2 * map.Shift(i * zNum + j) + map.Shift(iB * zNum + jB);
+        return Double.isNaN(d) ? 0. : d;
+    }
+
+    void Select(boolean[] level, int i, int j) {
+        if (selected[i * zNum + j])
+            return;
+        selected[i * zNum + j] = true;
+        level[i * zNum + j] = true;
+        count++;
+    }
+}
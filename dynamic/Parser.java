@@ -2,7 +2,7 @@ import java.util.*;
 
 class Parser {
     enum Indicator {
-        XINITL, XFINAL, XNUM, ZINITL, ZFINAL, ZNUM, ZREF, CENTER, SPAN, POINT, MEASUREMENT;
+        XINITL, XFINAL, XNUM, ZINITL, ZFINAL, ZNUM, ZREF, CENTER, SPAN, POINT, MEASUREMENT, FORMAT, TOLERANCE, SETTLE, PRECISION, MINIMUM, OUTPUT, LOGRECORDS, LOGINTERVAL, LOGSYNC, VNA, DMM, MC, PATH, POLICY, LIMIT, RETRY, RESUME, METRICS, PERIOD, BEAD, SNAPSHOT, REFINE, BUDGET, STRIDE, FLY, RUNUP, POWER, CAMPAIGN;
 
         static final Map<String, Indicator> indicatorMap = new HashMap<String, Indicator>();
         static {
@@ -17,6 +17,34 @@ class Parser {
             indicatorMap.put("-s", SPAN);
             indicatorMap.put("-n", POINT);
             indicatorMap.put("-t", MEASUREMENT);
+            indicatorMap.put("-f", FORMAT);
+            indicatorMap.put("-st", TOLERANCE);
+            indicatorMap.put("-sm", SETTLE);
+            indicatorMap.put("-e", PRECISION);
+            indicatorMap.put("-em", MINIMUM);
+            indicatorMap.put("-o", OUTPUT);
+            indicatorMap.put("-lr", LOGRECORDS);
+            indicatorMap.put("-lt", LOGINTERVAL);
+            indicatorMap.put("-ls", LOGSYNC);
+            indicatorMap.put("-vna", VNA);
+            indicatorMap.put("-dmm", DMM);
+            indicatorMap.put("-mc", MC);
+            indicatorMap.put("-p", PATH);
+            indicatorMap.put("-rp", POLICY);
+            indicatorMap.put("-rl", LIMIT);
+            indicatorMap.put("-rt", RETRY);
+            indicatorMap.put("-resume", RESUME);
+            indicatorMap.put("-mi", METRICS);
+            indicatorMap.put("-dp", PERIOD);
+            indicatorMap.put("-bk", BEAD);
+            indicatorMap.put("-fi", SNAPSHOT);
+            indicatorMap.put("-tol", REFINE);
+            indicatorMap.put("-ab", BUDGET);
+            indicatorMap.put("-ac", STRIDE);
+            indicatorMap.put("-fly", FLY);
+            indicatorMap.put("-fr", RUNUP);
+            indicatorMap.put("-pw", POWER);
+            indicatorMap.put("-campaign", CAMPAIGN);
         }
     }
 
@@ -49,19 +77,135 @@ class Parser {
                             DynamicTest.zRef = Double.parseDouble(args[++i]);
                             break;
                         case CENTER:
-                            VectorNetworkAnalyzer.center = Double.parseDouble(args[++i]);
+                            DynamicTest.vna.center = Double.parseDouble(args[++i]);
                             break;
                         case SPAN:
-                            VectorNetworkAnalyzer.span = Double.parseDouble(args[++i]);
+                            DynamicTest.vna.span = Double.parseDouble(args[++i]);
                             break;
                         case POINT:
-                            VectorNetworkAnalyzer.point = Integer.parseInt(args[++i]);
+                            DynamicTest.vna.point = Integer.parseInt(args[++i]);
                             break;
                         case MEASUREMENT:
-                            VectorNetworkAnalyzer.measurement = args[++i].toUpperCase();
-                            if (!Arrays.asList("S11", "S21", "S12", "S22").contains(VectorNetworkAnalyzer.measurement))
+                            DynamicTest.vna.measurement = args[++i].toUpperCase();
+                            List<String> measurements = Arrays.asList(DynamicTest.vna.Measurements());
+                            for (String m : measurements)
+                                if (!Arrays.asList("S11", "S21", "S12", "S22").contains(m) || measurements.indexOf(m) != measurements.lastIndexOf(m))
+                                    throw new ArgumentException();
+                            break;
+                        case FORMAT:
+                            DynamicTest.vna.format = args[++i].toUpperCase();
+                            if (!Arrays.asList("ASCII", "REAL32", "REAL64").contains(DynamicTest.vna.format))
+                                throw new ArgumentException();
+                            break;
+                        case TOLERANCE:
+                            DynamicTest.vna.tolerance = Double.parseDouble(args[++i]);
+                            break;
+                        case SETTLE:
+                            DynamicTest.vna.settleMax = Double.parseDouble(args[++i]);
+                            break;
+                        case PRECISION:
+                            DynamicTest.vna.precision = Double.parseDouble(args[++i]);
+                            break;
+                        case MINIMUM:
+                            DynamicTest.vna.minSweeps = Integer.parseInt(args[++i]);
+                            break;
+                        case OUTPUT:
+                            DynamicTest.output = args[++i].toUpperCase();
+                            if (!Arrays.asList("TEXT", "ARCHIVE").contains(DynamicTest.output))
+                                throw new ArgumentException();
+                            break;
+                        case LOGRECORDS:
+                            SlowControlLog.records = Integer.parseInt(args[++i]);
+                            break;
+                        case LOGINTERVAL:
+                            SlowControlLog.interval = Integer.parseInt(args[++i]);
+                            break;
+                        case LOGSYNC:
+                            String sync = args[++i].toUpperCase();
+                            if (!Arrays.asList("ON", "OFF").contains(sync))
+                                throw new ArgumentException();
+                            SlowControlLog.sync = sync.equals("ON");
+                            break;
+                        case VNA:
+                            String[] vna = args[++i].split(":");
+                            DynamicTest.vna.host = vna[0];
+                            if (vna.length > 1)
+                                DynamicTest.vna.port = Integer.parseInt(vna[1]);
+                            break;
+                        case DMM:
+                            String[] dmm = args[++i].split(":");
+                            DynamicTest.dmm.host = dmm[0];
+                            if (dmm.length > 1)
+                                DynamicTest.dmm.port = Integer.parseInt(dmm[1]);
+                            break;
+                        case MC:
+                            String[] mc = args[++i].split(":");
+                            DynamicTest.motion.host = mc[0];
+                            if (mc.length > 1)
+                                DynamicTest.motion.port = Integer.parseInt(mc[1]);
+                            break;
+                        case PATH:
+                            ScanPlanner.order = ScanPlanner.Order.orderMap.get(args[++i].toUpperCase());
+                            if (ScanPlanner.order == null)
+                                throw new ArgumentException();
+                            break;
+                        case POLICY:
+                            ReferencePolicy.mode = ReferencePolicy.Mode.modeMap.get(args[++i].toUpperCase());
+                            if (ReferencePolicy.mode == null)
+                                throw new ArgumentException();
+                            break;
+                        case LIMIT:
+                            ReferencePolicy.limit = Double.parseDouble(args[++i]);
+                            break;
+                        case RETRY:
+                            DynamicTest.retries = Integer.parseInt(args[++i]);
+                            break;
+                        case RESUME:
+                            DynamicTest.resume = true;
+                            break;
+                        case METRICS:
+                            PhaseMetrics.interval = Double.parseDouble(args[++i]);
+                            break;
+                        case PERIOD:
+                            TemperatureSampler.period = Double.parseDouble(args[++i]);
+                            break;
+                        case BEAD:
+                            FieldMap.bead = Double.parseDouble(args[++i]);
+                            if (FieldMap.bead < 0)
+                                throw new ArgumentException();
+                            break;
+                        case SNAPSHOT:
+                            FieldMap.interval = Double.parseDouble(args[++i]);
+                            break;
+                        case REFINE:
+                            GridRefiner.tolerance = Double.parseDouble(args[++i]);
+                            if (GridRefiner.tolerance < 0)
+                                throw new ArgumentException();
+                            break;
+                        case BUDGET:
+                            GridRefiner.budget = Integer.parseInt(args[++i]);
+                            break;
+                        case STRIDE:
+                            GridRefiner.stride = Integer.parseInt(args[++i]);
+                            if (GridRefiner.stride < 1)
+                                throw new ArgumentException();
+                            break;
+                        case FLY:
+                            FlyScan.speed = Double.parseDouble(args[++i]);
+                            if (FlyScan.speed < 0)
+                                throw new ArgumentException();
+                            break;
+                        case RUNUP:
+                            FlyScan.runup = Double.parseDouble(args[++i]);
+                            if (FlyScan.runup < 0)
                                 throw new ArgumentException();
                             break;
+                        case POWER:
+                            DynamicTest.vna.power = Double.parseDouble(args[++i]);
+                            break;
+                        case CAMPAIGN:
+                            Campaign.fname = args[++i];
+                            break;
                     }
                 } catch (ArrayIndexOutOfBoundsException e) {
                     throw new ArgumentException();
@@ -73,9 +217,3 @@ class Parser {
         }
     }
 }
-
-class ArgumentException extends Exception {
-    ArgumentException() {
-        super();
-    }
-}
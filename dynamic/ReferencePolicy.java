@@ -0,0 +1,153 @@
+import java.util.*;
+
+// Decides when the cavity is sent to the reference position and supplies the perturbation points
+// measured in between with references interpolated in time. The resonance of the unperturbed cavity
+// is interpolated between the two bracketing references, and both traces are shifted in frequency onto
+// it before they are averaged: a plain blend of two traces whose resonances drifted apart would be
+// broader than either, and split in two once the drift exceeds the bandwidth.
+class ReferencePolicy {
+    enum Mode {
+        POINT, COUNT, TIME, TEMPERATURE;
+
+        static final Map<String, Mode> modeMap = new HashMap<String, Mode>();
+        static {
+            modeMap.put("POINT", POINT); // reference before every perturbation point
+            modeMap.put("COUNT", COUNT); // reference every `limit' perturbation points
+            modeMap.put("TIME", TIME); // reference every `limit' seconds
+            modeMap.put("TEMPERATURE", TEMPERATURE); // reference once the temperature changed by `limit' degrees
+        }
+    }
+
+    static Mode mode = Mode.POINT;
+    static double limit = 5.;
+
+    static ResonanceFitter fitter = new ResonanceFitter(); // of the measured references, on the thread of the scan
+
+    double[] lastTrace = null; // latest measured reference
+    double lastResonance; // kHz
+    long lastTime; // ns
+    double lastTemperature;
+    int count = 0; // perturbation points since the latest reference
+    int[] matched = null; // point the latest reference was measured for
+    List<int[]> pendingIndex = new ArrayList<int[]>(); // waiting for the next reference
+    List<Long> pendingTime = new ArrayList<Long>(); // ns
+    List<Long> pendingStamp = new ArrayList<Long>(); // ms since epoch
+
+    // references are scheduled here rather than planned with the scan path
+    static boolean Scheduled() {
+        return DynamicTest.zRef >= 0 && mode != Mode.POINT;
+    }
+
+    boolean Due(double temperature) {
+        if (lastTrace == null)
+            return true;
+        switch (mode) {
+            case COUNT:
+                return count >= limit;
+            case TIME:
+                return (System.nanoTime() - lastTime) * 1e-9 >= limit;
+            case TEMPERATURE:
+                return Math.abs(temperature - lastTemperature) >= limit;
+            default:
+                return true;
+        }
+    }
+
+    boolean Pending() {
+        return !pendingIndex.isEmpty();
+    }
+
+    void Perturbation(int xIndex, int zIndex) {
+        count++;
+        if (matched != null && matched[0] == xIndex && matched[1] == zIndex)
+            return; // has its own
+        pendingIndex.add(new int[] {xIndex, zIndex});
+        pendingTime.add(System.nanoTime());
+        pendingStamp.add(System.currentTimeMillis());
+    }
+
+    // a reference measured for the given point, the points since the previous reference are interpolated
+    void Reference(int xIndex, int zIndex, final double[] trace, double temperature) {
+        long time = System.nanoTime();
+        double resonance = Resonance(trace);
+        for (int k = 0; k < pendingIndex.size(); k++) {
+            if (pendingIndex.get(k)[0] == xIndex && pendingIndex.get(k)[1] == zIndex) {
+                // the closing reference is measured after its point and serves it directly
+                pendingIndex.remove(k);
+                pendingTime.remove(k);
+                pendingStamp.remove(k);
+                break;
+            }
+        }
+        for (int k = 0; k < pendingIndex.size(); k++) {
+            final int[] index = pendingIndex.get(k);
+            double weight = (double) (pendingTime.get(k) - lastTime) / (time - lastTime);
+            final double[] blend = Interpolate(lastTrace, lastResonance, trace, resonance, weight);
+            final long stamp = pendingStamp.get(k);
+            final double blendTemperature = (1 - weight) * lastTemperature + weight * temperature;
+            DynamicTest.writer.execute(() -> DynamicTest.RecordTrace(0, index[0], index[1], stamp, blendTemperature, blend));
+        }
+        if (!pendingIndex.isEmpty())
+            System.out.println(pendingIndex.size() + " references interpolated");
+
+        pendingIndex.clear();
+        pendingTime.clear();
+        pendingStamp.clear();
+        count = 0;
+        matched = new int[] {xIndex, zIndex};
+        lastTrace = trace;
+        lastResonance = resonance;
+        lastTime = time;
+        lastTemperature = temperature;
+    }
+
+    // resonance of a reference in kHz, NaN without a transmission or if the fit failed
+    static double Resonance(double[] trace) {
+        VectorNetworkAnalyzer.Config vna = DynamicTest.vna;
+        if (!vna.Transmission())
+            return Double.NaN;
+        int n = trace.length / 2 / vna.Measurements().length;
+        fitter.Fit(trace, n * vna.Primary(), n, vna.center, vna.span);
+        return fitter.f0;
+    }
+
+    // reference at the given fraction of the time from one measured reference to the next, all measurements
+    // of the traces are shifted alike, and where one of them is shifted beyond its window the other one is
+    // taken alone; without both resonances the traces are merely blended
+    static double[] Interpolate(double[] before, double resonanceBefore, double[] after, double resonanceAfter, double weight) {
+        int m = DynamicTest.vna.Measurements().length, n = after.length / 2 / m;
+        double shiftBefore = 0., shiftAfter = 0.; // points
+        if (!Double.isNaN(resonanceBefore) && !Double.isNaN(resonanceAfter) && n > 1) {
+            double spacing = DynamicTest.vna.span / (n - 1); // kHz
+            double resonance = (1 - weight) * resonanceBefore + weight * resonanceAfter;
+            shiftBefore = (resonance - resonanceBefore) / spacing;
+            shiftAfter = (resonance - resonanceAfter) / spacing;
+        }
+        double[] blend = new double[after.length];
+        for (int k = 0; k < m; k++)
+            for (int i = 0; i < n; i++)
+                for (int part = 0; part < 2; part++) {
+                    double a = Sample(before, k*n, n, i - shiftBefore, part), b = Sample(after, k*n, n, i - shiftAfter, part);
+                    if (Double.isNaN(a) && Double.isNaN(b))
+                        blend[2*(k*n + i) + part] = (1 - weight) * before[2*(k*n + i) + part] + weight * after[2*(k*n + i) + part];
+                    else if (Double.isNaN(a))
+                        blend[2*(k*n + i) + part] = b;
+                    else if (Double.isNaN(b))
+                        blend[2*(k*n + i) + part] = a;
+                    else
+                        blend[2*(k*n + i) + part] = (1 - weight) * a + weight * b;
+                }
+        return blend;
+    }
+
+    // real (part 0) or imaginary part (part 1) of a measurement between its points, NaN beyond them
+    static double Sample(double[] trace, int offset, int n, double position, int part) {
+        if (position < 0. || position > n - 1)
+            return Double.NaN;
+        int i = Math.min((int) position, n - 2);
+        if (i < 0)
+            return trace[2*offset + part]; // a single point
+        double fraction = position - i;
+        return (1 - fraction) * trace[2*(offset + i) + part] + fraction * trace[2*(offset + i + 1) + part];
+    }
+}
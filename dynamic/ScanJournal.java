@@ -0,0 +1,75 @@
+import java.io.*;
+import java.util.*;
+
+// One line for every trace of the scan once it has been written, such that an interrupted scan can be
+// resumed with the same settings from the first missing point. The offset locates the record in
+// `traces.arc'; a record beyond the end of the archive didn't reach the disk and is measured again.
+class ScanJournal {
+    static final String columns = "# indicator, X index, Z index, offset in traces.arc [B] (-1 for text output)\n";
+
+    String fname;
+    BufferedWriter writer;
+    Map<Long, Long> done = new HashMap<Long, Long>(); // (indicator, X index, Z index) -> offset
+
+    // end is the size of the archive in bytes, or the largest long for text output
+    ScanJournal(String fname, String settings, boolean resume, long end) {
+        this.fname = fname;
+        if (resume) {
+            StringBuilder header = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new FileReader(fname))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("#")) {
+                        header.append(line).append('\n');
+                        continue;
+                    }
+                    String[] v = line.split("\t");
+                    long offset = Long.parseLong(v[3]);
+                    if (offset < end)
+                        done.put(TraceArchive.Reader.Key(Integer.parseInt(v[0]), Integer.parseInt(v[1]), Integer.parseInt(v[2])), offset);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error! Couldn't read file `" + fname + "' to resume.");
+                System.exit(1);
+            }
+            if (!header.toString().equals(settings + columns)) {
+                System.err.println("Error! The settings of `" + fname + "' differ from the present ones.");
+                System.exit(1);
+            }
+        }
+
+        try {
+            writer = new BufferedWriter(new FileWriter(fname, resume));
+            if (!resume)
+                writer.write(settings + columns);
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't create file `" + fname + "'.");
+            System.exit(1);
+        }
+    }
+
+    boolean Done(int indicator, int xIndex, int zIndex) {
+        return done.containsKey(TraceArchive.Reader.Key(indicator, xIndex, zIndex));
+    }
+
+    // only called by the writer, right after the trace
+    void Record(int indicator, int xIndex, int zIndex, long offset) {
+        try {
+            writer.write(indicator + "\t" + xIndex + "\t" + zIndex + "\t" + offset + '\n');
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't write to file `" + fname + "'.");
+            System.exit(1);
+        }
+    }
+
+    void CleanUp() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+            System.exit(1);
+        }
+    }
+}
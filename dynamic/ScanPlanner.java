@@ -0,0 +1,143 @@
+import java.util.*;
+
+class ScanPlanner {
+    enum Order {
+        RASTER, SERPENTINE, GROUPED, NEAREST;
+
+        static final Map<String, Order> orderMap = new HashMap<String, Order>();
+        static {
+            orderMap.put("RASTER", RASTER); // Z always from initial to final, reference before every point
+            orderMap.put("SERPENTINE", SERPENTINE); // Z direction alternates from one X to the next
+            orderMap.put("GROUPED", GROUPED); // references of one side of a column are taken in a row
+            orderMap.put("NEAREST", NEAREST); // greedy nearest neighbour by travel time
+        }
+    }
+
+    static Order order = Order.RASTER;
+
+    static class Step {
+        final int indicator; // 0 = reference, 1 = perturbation
+        final int xIndex, zIndex; // grid index, used for the file names
+        final double x, z; // mm, position of the motor
+
+        Step(int indicator, int xIndex, int zIndex, double x, double z) {
+            this.indicator = indicator;
+            this.xIndex = xIndex;
+            this.zIndex = zIndex;
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    // travel time in s between two positions in mm with the speeds of the present test
+    static double TravelTime(double x0, double z0, double x1, double z1) {
+        return DynamicTest.motion.TravelTime(x0, z0, x1, z1);
+    }
+
+    // total travel time in s from the origin along all steps and back to the origin
+    static double MotionTime(List<Step> steps) {
+        double time = 0., x = 0., z = 0.;
+        for (Step step : steps) {
+            time += TravelTime(x, z, step.x, step.z);
+            x = step.x;
+            z = step.z;
+        }
+        return time + TravelTime(x, z, 0., 0.);
+    }
+
+    // references are only planned if they are taken before every point
+    static List<Step> Plan(Order order, boolean ref) {
+        return Plan(order, ref, null);
+    }
+
+    // only the points of the grid which are selected, by X index * zNum + Z index, all if null
+    static List<Step> Plan(Order order, boolean ref, boolean[] selected) {
+        int xNum = DynamicTest.xNum, zNum = DynamicTest.zNum;
+        double[] xMove = new double[xNum];
+        double[] zMove = new double[zNum];
+        double[] zMoveRef = new double[zNum];
+        double xIncre = (DynamicTest.xFinal - DynamicTest.xInitl) / (xNum==1 ? 1 : xNum-1);
+        double zIncre = (DynamicTest.zFinal - DynamicTest.zInitl) / (zNum==1 ? 1 : zNum-1);
+        double xPos = DynamicTest.xInitl, zPos = DynamicTest.zInitl;
+        for (int i = 0; i < xNum; i++, xPos += xIncre)
+            xMove[i] = -xPos;
+        for (int j = 0; j < zNum; j++, zPos += zIncre) {
+            zMove[j] = zPos;
+            zMoveRef[j] = zPos>0 ? DynamicTest.zRef : -DynamicTest.zRef;
+        }
+
+        List<Step> steps = new ArrayList<Step>();
+        switch (order) {
+            case RASTER:
+            case SERPENTINE:
+                for (int i = 0; i < xNum; i++) {
+                    boolean backward = order == Order.SERPENTINE && i % 2 == 1;
+                    for (int k = 0; k < zNum; k++) {
+                        int j = backward ? zNum-1-k : k;
+                        if (selected != null && !selected[i*zNum+j])
+                            continue;
+                        if (ref)
+                            steps.add(new Step(0, i, j, xMove[i], zMoveRef[j]));
+                        steps.add(new Step(1, i, j, xMove[i], zMove[j]));
+                    }
+                }
+                break;
+            case GROUPED:
+                // forward: references below, points upwards, references above; backward the other way round
+                for (int i = 0; i < xNum; i++) {
+                    boolean backward = i % 2 == 1;
+                    for (int side = 0; side < 2; side++) {
+                        boolean upper = backward ? side == 0 : side == 1;
+                        List<Integer> js = new ArrayList<Integer>();
+                        for (int k = 0; k < zNum; k++) {
+                            int j = backward ? zNum-1-k : k;
+                            if ((zMove[j] > 0) == upper && (selected == null || selected[i*zNum+j]))
+                                js.add(j);
+                        }
+                        if (ref && side == 0)
+                            for (int j : js)
+                                steps.add(new Step(0, i, j, xMove[i], zMoveRef[j]));
+                        for (int j : js)
+                            steps.add(new Step(1, i, j, xMove[i], zMove[j]));
+                        if (ref && side == 1)
+                            for (int j : js)
+                                steps.add(new Step(0, i, j, xMove[i], zMoveRef[j]));
+                    }
+                }
+                break;
+            case NEAREST:
+                // a reference and its perturbation are visited as one unit
+                boolean[] visited = new boolean[xNum*zNum];
+                int count = 0;
+                for (int k = 0; k < xNum*zNum; k++) {
+                    visited[k] = selected != null && !selected[k];
+                    if (!visited[k])
+                        count++;
+                }
+                double x = 0., z = 0.;
+                for (int n = 0; n < count; n++) {
+                    int next = -1;
+                    double best = Double.MAX_VALUE;
+                    for (int k = 0; k < xNum*zNum; k++) {
+                        if (visited[k])
+                            continue;
+                        double time = TravelTime(x, z, xMove[k/zNum], ref ? zMoveRef[k%zNum] : zMove[k%zNum]);
+                        if (time < best) {
+                            best = time;
+                            next = k;
+                        }
+                    }
+                    visited[next] = true;
+                    int i = next/zNum, j = next%zNum;
+                    if (ref)
+                        steps.add(new Step(0, i, j, xMove[i], zMoveRef[j]));
+                    steps.add(new Step(1, i, j, xMove[i], zMove[j]));
+                    x = xMove[i];
+                    z = zMove[j];
+                }
+                break;
+        }
+
+        return steps;
+    }
+}
@@ -1,4 +1,4 @@
 #!/bin/bash
 
-javac DynamicTest.java
+javac -sourcepath .:../common -d . DynamicTest.java
 jar cvfm DynamicTest.jar Manifest *.class
@@ -0,0 +1,37 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+// SCPI subset of the multimeter as used by Multimeter.java
+class DmmSimulator implements Runnable {
+  Socket socket;
+  double nplc = 10.;
+  Random random = new Random();
+
+  DmmSimulator(Socket socket) {
+    this.socket = socket;
+  }
+
+  public void run() {
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+         Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        for (String cmd : line.trim().split(";")) {
+          if (cmd.startsWith("TEMP:NPLC"))
+            nplc = Double.parseDouble(cmd.substring(9).trim());
+          else if (cmd.equals("SYST:ERR?"))
+            out.write("+0,\"No error\"\n");
+          else if (cmd.equals("READ?")) {
+            Simulator.Sleep(nplc / 50.); // integration over power line cycles of 50 Hz
+            double temperature = Simulator.Temperature(Simulator.Time()) + 0.002 * random.nextGaussian();
+            out.write(String.format(Locale.ROOT, "%+.8E\n", temperature));
+          }
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      // connection closed by the client
+    }
+  }
+}
@@ -0,0 +1,78 @@
+import java.io.*;
+import java.net.*;
+
+// isel protocol subset as used by MotorController.java, the axes are driven one after another
+class MotorSimulator implements Runnable {
+  static final double factor = 320.; // micro steps per mm
+  static double homing = 2.; // s, reference run
+  static double[] from = {0., 0.}, to = {0., 0.}; // mm
+  static double moveStart = 0., xTime = 0., zTime = 0.; // s
+  Socket socket;
+
+  MotorSimulator(Socket socket) {
+    this.socket = socket;
+  }
+
+  // mm, position of the bead at the given time, the start of the latest movement before it
+  static synchronized double[] Position(double time) {
+    double t = time - moveStart;
+    double x = to[0], z = to[1];
+    if (t < xTime || t < 0)
+      x = xTime > 0 ? from[0] + (to[0] - from[0]) * Math.max(t, 0.) / xTime : from[0];
+    if (t < xTime + zTime || t < 0)
+      z = zTime > 0 ? from[1] + (to[1] - from[1]) * Math.max(t - xTime, 0.) / zTime : from[1];
+    return new double[] {x, z};
+  }
+
+  static synchronized double Move(double x, double xSpeed, double z, double zSpeed) {
+    double now = Simulator.Time();
+    from = Position(now);
+    to = new double[] {x, z};
+    moveStart = now;
+    double duration = Math.abs(x - from[0]) / xSpeed + Math.abs(z - from[1]) / zSpeed;
+    xTime = Math.abs(x - from[0]) / xSpeed * Simulator.timeScale;
+    zTime = Math.abs(z - from[1]) / zSpeed * Simulator.timeScale;
+    return duration; // s, before scaling
+  }
+
+  static synchronized void Reference() {
+    from = new double[] {0., 0.};
+    to = new double[] {0., 0.};
+    xTime = zTime = 0.;
+  }
+
+  public void run() {
+    try (InputStream in = socket.getInputStream(); OutputStream out = socket.getOutputStream()) {
+      StringBuilder sb = new StringBuilder();
+      int c;
+      while ((c = in.read()) >= 0) {
+        if (c != '\r') {
+          sb.append((char) c);
+          continue;
+        }
+        String cmd = sb.toString().trim();
+        sb.setLength(0);
+        char reply = '0';
+        if (cmd.equals("@03"))
+          Simulator.Sleep(homing);
+        else if (cmd.equals("@0N3"))
+          Reference();
+        else if (cmd.startsWith("@0M")) {
+          String[] v = cmd.substring(3).split(",");
+          try {
+            double duration = Move(Integer.parseInt(v[0].trim()) / factor, Integer.parseInt(v[1].trim()) / factor,
+                Integer.parseInt(v[2].trim()) / factor, Integer.parseInt(v[3].trim()) / factor);
+            Simulator.Sleep(duration);
+          } catch (RuntimeException e) {
+            reply = '1'; // invalid parameter
+          }
+        } else
+          reply = '3'; // unknown command
+        out.write(reply);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // connection closed by the client
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/* This program imitates the bench, i.e. the vector network analyzer, the multimeter and the motor controller, on local ports, such that the tests can be run and timed without the instruments.
+ *
+ * All Copyleft Reserved!
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+public class Simulator {
+    static int vnaPort = 5025;
+    static int dmmPort = 5026;
+    static int mcPort = 2001;
+    static double timeScale = 1.; // factor on every latency, 0 means instant replies
+    static double resonance = 682.; // MHz, at 23 degrees without perturbation
+    static double fwhm = 40.; // kHz
+    static double noise = 1e-3; // relative to the peak of a single sweep
+    static double perturbation = -50.; // kHz, largest shift caused by the bead
+    static double drift = -10.; // kHz/K
+    static long start = System.nanoTime();
+
+    enum Indicator {
+        VNA, DMM, MC, TIME, RESONANCE, FWHM, NOISE, PERTURBATION, DRIFT;
+
+        static final Map<String, Indicator> indicatorMap = new HashMap<String, Indicator>();
+        static {
+            indicatorMap.put("-vna", VNA);
+            indicatorMap.put("-dmm", DMM);
+            indicatorMap.put("-mc", MC);
+            indicatorMap.put("-time", TIME);
+            indicatorMap.put("-c", RESONANCE);
+            indicatorMap.put("-w", FWHM);
+            indicatorMap.put("-noise", NOISE);
+            indicatorMap.put("-p", PERTURBATION);
+            indicatorMap.put("-d", DRIFT);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                Indicator indicator = Indicator.indicatorMap.get(args[i]);
+                if (indicator == null)
+                    throw new IllegalArgumentException();
+                switch (indicator) {
+                    case VNA: vnaPort = Integer.parseInt(args[++i]); break;
+                    case DMM: dmmPort = Integer.parseInt(args[++i]); break;
+                    case MC: mcPort = Integer.parseInt(args[++i]); break;
+                    case TIME: timeScale = Double.parseDouble(args[++i]); break;
+                    case RESONANCE: resonance = Double.parseDouble(args[++i]); break;
+                    case FWHM: fwhm = Double.parseDouble(args[++i]); break;
+                    case NOISE: noise = Double.parseDouble(args[++i]); break;
+                    case PERTURBATION: perturbation = Double.parseDouble(args[++i]); break;
+                    case DRIFT: drift = Double.parseDouble(args[++i]); break;
+                }
+            }
+        } catch (RuntimeException e) {
+            printHelp();
+            System.exit(1);
+        }
+
+        Serve(vnaPort, "vector network analyzer", VnaSimulator.class);
+        Serve(dmmPort, "multimeter", DmmSimulator.class);
+        Serve(mcPort, "motor controller", MotorSimulator.class);
+    }
+
+    static void printHelp() {
+        System.err.println("+-----------+\n|   USAGE   |\n+-----------+");
+        System.err.println("The program simulates the instruments of the bench on localhost" +
+                "\n\npossible options are:" +
+                "\n-vna\tport of the vector network analyzer" +
+                "\n-dmm\tport of the multimeter" +
+                "\n-mc\tport of the motor controller" +
+                "\n-time\tfactor on sweep, integration and movement times (0 means no latency)" +
+                "\n-c\tunperturbed resonant frequency in MHz" +
+                "\n-w\tfull width at half maximum in kHz" +
+                "\n-noise\trelative noise of a single sweep" +
+                "\n-p\tlargest frequency shift by the bead in kHz" +
+                "\n-d\tfrequency drift in kHz/K" +
+                "\n\ndefault setting is equivalent to:" +
+                "\njava -jar Simulator.jar -vna 5025 -dmm 5026 -mc 2001 -time 1 -c 682 -w 40 -noise 0.001 -p -50 -d -10");
+    }
+
+    // every connection is served by its own session on its own thread
+    static void Serve(final int port, final String name, final Class<? extends Runnable> session) {
+        final ServerSocket server;
+        try {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't listen on port " + port + " for the " + name + ".");
+            System.exit(1);
+            return;
+        }
+        new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    Runnable r = session.getDeclaredConstructor(Socket.class).newInstance(socket);
+                    new Thread(r).start();
+                } catch (Exception e) {
+                    System.err.println("Error! Couldn't accept a connection to the " + name + ".");
+                }
+            }
+        }).start();
+        System.out.println("the " + name + " is simulated on localhost:" + port);
+    }
+
+    static void Sleep(double seconds) {
+        if (seconds * timeScale <= 0)
+            return;
+        try {
+            Thread.sleep((long) (seconds * timeScale * 1e3));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static double Time() {
+        return (System.nanoTime() - start) * 1e-9;
+    }
+
+    // degrees, slow oscillation of the lab temperature
+    static double Temperature(double time) {
+        return 23. + 0.5 * Math.sin(2 * Math.PI * time / 3600.);
+    }
+
+    // kHz, shift by the bead at motor coordinates in mm, the field vanishes outside the cavity
+    static double Shift(double x, double z) {
+        if (Math.abs(x) >= 60. || Math.abs(z) >= 70.)
+            return 0.;
+        double ex = Math.cos(Math.PI * x / 120.), ez = Math.cos(Math.PI * z / 140.);
+        return perturbation * ex*ex * ez*ez;
+    }
+
+    // kHz, resonant frequency at the given time
+    static double Resonance(double time) {
+        double[] position = MotorSimulator.Position(time);
+        return 1e3 * resonance + drift * (Temperature(time) - 23.) + Shift(position[0], position[1]);
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+
+// SCPI subset of the vector network analyzer as used by VectorNetworkAnalyzer.java, the trace is
+// the Lorentzian of Simulator.Resonance at the time every point is swept, with complex noise
+class VnaSimulator implements Runnable {
+  Socket socket;
+  DataOutputStream out;
+  Random random = new Random();
+  List<String> errors = new ArrayList<String>();
+
+  Map<String, String> traces = new LinkedHashMap<String, String>(); // name -> s-parameter
+  String active; // trace returned by CALC:DATA?
+  int sweepCount, points, averageCount;
+  boolean average;
+  double bandwidth, center, span; // kHz, MHz, kHz
+  boolean cw; // zero-span sweeps at the fixed frequency
+  double frequency, sweepTime; // MHz, s of a sweep or 0 for the shortest one
+  String format;
+  boolean swapped;
+  Map<String, double[]> data = new HashMap<String, double[]>(); // s-parameter -> latest trace
+
+  VnaSimulator(Socket socket) {
+    this.socket = socket;
+    Reset();
+  }
+
+  void Reset() {
+    traces.clear();
+    traces.put("TRC1", "S21");
+    active = "TRC1";
+    sweepCount = 1;
+    points = 201;
+    averageCount = 10;
+    average = false;
+    bandwidth = 10.;
+    center = Simulator.resonance;
+    span = 1e3;
+    cw = false;
+    frequency = Simulator.resonance;
+    sweepTime = 0.;
+    format = "ASCII";
+    swapped = false;
+    data.clear();
+  }
+
+  public void run() {
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      String line;
+      while ((line = in.readLine()) != null) {
+        for (String cmd : line.trim().split(";"))
+          if (!cmd.isEmpty())
+            Execute(cmd.trim());
+        out.flush();
+      }
+    } catch (IOException e) {
+      // connection closed by the client
+    }
+  }
+
+  void Execute(String cmd) throws IOException {
+    int space = cmd.indexOf(' ');
+    String header = space < 0 ? cmd : cmd.substring(0, space);
+    String value = space < 0 ? "" : cmd.substring(space + 1).trim();
+
+    try {
+      switch (header) {
+        case "@REM": case "@LOC": case "*WAI": case "*CLS": case "INIT:CONT": case "SOUR:POW": case "MMEM:LOAD:CORR":
+          break;
+        case "*OPC?": // sweeps are carried out while their INIT is parsed, so they are over by now
+          out.writeBytes("1\n");
+          break;
+        case "ABOR":
+          break;
+        case "*RST":
+          Reset();
+          break;
+        case "CALC:PAR:MEAS":
+          traces.put(Name(value), Parameter(value));
+          break;
+        case "CALC:PAR:SDEF":
+          traces.put(Name(value), Parameter(value));
+          active = Name(value);
+          break;
+        case "CALC:PAR:DEL":
+          if (traces.remove(value.replace("'", "").trim().toUpperCase()) == null)
+            throw new IllegalArgumentException();
+          break;
+        case "CALC:PAR:SEL":
+          active = value.replace("'", "").trim().toUpperCase();
+          break;
+        case "SWE:COUN":
+          sweepCount = Integer.parseInt(value);
+          break;
+        case "SWE:POIN":
+          points = Integer.parseInt(value);
+          break;
+        case "AVER:COUN":
+          averageCount = Integer.parseInt(value);
+          break;
+        case "AVER":
+          average = value.equals("ON");
+          break;
+        case "AVER:CLE":
+          break;
+        case "BAND":
+          bandwidth = Double.parseDouble(value.replace("KHZ", ""));
+          break;
+        case "FREQ:CENT":
+          center = Double.parseDouble(value.replace("MHZ", ""));
+          break;
+        case "FREQ:SPAN":
+          span = Double.parseDouble(value.replace("KHZ", ""));
+          break;
+        case "SWE:TYPE":
+          cw = value.equals("CW") || value.equals("POIN");
+          break;
+        case "FREQ:CW":
+          frequency = Double.parseDouble(value.replace("MHZ", ""));
+          break;
+        case "SWE:TIME":
+          sweepTime = Double.parseDouble(value.replace("S", ""));
+          break;
+        case "SWE:TIME:AUTO":
+          sweepTime = 0.;
+          break;
+        case "FORM":
+          format = value.startsWith("REAL") ? "REAL" + value.substring(value.indexOf(',') + 1).trim() : "ASCII";
+          break;
+        case "FORM:BORD":
+          swapped = value.equals("SWAP");
+          break;
+        case "INIT":
+          Sweep();
+          break;
+        case "CALC:DATA?":
+          Write(Trace(traces.get(active)));
+          break;
+        case "CALC:DATA:CALL?": // every s-parameter once, in the order of the catalog
+          List<String> catalog = Catalog();
+          double[] all = new double[2 * points * catalog.size()];
+          for (int k = 0; k < catalog.size(); k++)
+            System.arraycopy(Trace(catalog.get(k)), 0, all, 2 * points * k, 2 * points);
+          Write(all);
+          break;
+        case "CALC:DATA:CALL:CAT?":
+          out.writeBytes("'" + String.join(",", Catalog()) + "'\n");
+          break;
+        case "SYST:ERR:ALL?":
+          out.writeBytes(errors.isEmpty() ? "0,\"No error\"\n" : String.join(",", errors) + "\n");
+          errors.clear();
+          break;
+        default:
+          errors.add("-113,\"Undefined header;" + cmd + "\"");
+      }
+    } catch (RuntimeException e) {
+      errors.add("-224,\"Illegal parameter value;" + cmd + "\"");
+    }
+  }
+
+  static String Name(String value) {
+    return value.substring(0, value.indexOf(',')).replace("'", "").trim().toUpperCase();
+  }
+
+  static String Parameter(String value) {
+    String parameter = value.substring(value.indexOf(',') + 1).replace("'", "").trim().toUpperCase();
+    if (!Arrays.asList("S11", "S21", "S12", "S22").contains(parameter))
+      throw new IllegalArgumentException();
+    return parameter;
+  }
+
+  // s-parameters of the channel in the order of the s-matrix rather than of the traces
+  List<String> Catalog() {
+    return new ArrayList<String>(new TreeSet<String>(traces.values()));
+  }
+
+  double[] Trace(String parameter) {
+    double[] trace = data.get(parameter);
+    return trace != null && trace.length == 2*points ? trace : new double[2*points];
+  }
+
+  // s, duration of a single sweep over all points, no shorter than the filter allows
+  double SweepTime() {
+    return Math.max(1.2 * points / (1e3 * bandwidth), sweepTime);
+  }
+
+  void Sweep() {
+    int sweeps = Math.max(sweepCount, 1);
+    double duration = SweepTime();
+    double start = Simulator.Time();
+    Simulator.Sleep(sweeps * duration);
+
+    // averaging only lowers the noise, the last sweep defines the time of every point
+    double sigma = Simulator.noise / Math.sqrt(average ? Math.min(sweeps, averageCount) : 1);
+    double last = start + (sweeps - 1) * duration * Simulator.timeScale;
+    data.clear();
+    for (String parameter : traces.values())
+      data.put(parameter, Sweep(parameter, last, duration, sigma));
+  }
+
+  double[] Sweep(String parameter, double last, double duration, double sigma) {
+    boolean transmission = parameter.equals("S21") || parameter.equals("S12");
+    double[] trace = new double[2*points];
+    for (int i = 0; i < points; i++) {
+      double f = cw ? 1e3 * frequency : 1e3 * center - span/2 + span * i / (points==1 ? 1 : points-1);
+      double f0 = Simulator.Resonance(last + duration * Simulator.timeScale * i / points);
+      double u = 2 * (f - f0) / Simulator.fwhm;
+      double re = 1 / (1 + u*u), im = -u / (1 + u*u);
+      double a = transmission ? 1e-2 : 0.8;
+      if (transmission) {
+        trace[2*i] = a * (re + sigma * random.nextGaussian());
+        trace[2*i+1] = a * (im + sigma * random.nextGaussian());
+      } else { // dip of the reflection
+        trace[2*i] = 1 - a * re + sigma * random.nextGaussian();
+        trace[2*i+1] = -a * im + sigma * random.nextGaussian();
+      }
+    }
+    return trace;
+  }
+
+  void Write(double[] data) throws IOException {
+    if (format.equals("ASCII")) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < data.length; i++) {
+        if (i > 0)
+          sb.append(',');
+        sb.append(String.format(Locale.ROOT, "%.9E", data[i]));
+      }
+      out.writeBytes(sb.append('\n').toString());
+      return;
+    }
+
+    int size = format.equals("REAL32") ? 4 : 8;
+    ByteBuffer bb = ByteBuffer.allocate(size * data.length).order(swapped ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    for (double d : data) {
+      if (size == 4)
+        bb.putFloat((float) d);
+      else
+        bb.putDouble(d);
+    }
+    String length = String.valueOf(bb.capacity());
+    out.writeBytes("#" + length.length() + length);
+    out.write(bb.array());
+    out.writeBytes("\n");
+  }
+}
@@ -0,0 +1,4 @@
+#!/bin/bash
+
+javac Simulator.java
+jar cvfm Simulator.jar Manifest *.class
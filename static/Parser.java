@@ -2,7 +2,7 @@ import java.util.*;
 
 class Parser {
     enum Indicator {
-        CENTER, SPAN, REPETITION, POINT, MEASUREMENT;
+        CENTER, SPAN, REPETITION, POINT, MEASUREMENT, FORMAT, TOLERANCE, SETTLE, PRECISION, MINIMUM, OUTPUT, LOGRECORDS, LOGINTERVAL, LOGSYNC, VNA, DMM, METRICS, TRACKING, DENSITY, CW, CWTIME, PERIOD;
 
         static final Map<String, Indicator> indicatorMap = new HashMap<String, Indicator>();
         static {
@@ -11,6 +11,23 @@ class Parser {
             indicatorMap.put("-r", REPETITION);
             indicatorMap.put("-n", POINT);
             indicatorMap.put("-t", MEASUREMENT);
+            indicatorMap.put("-f", FORMAT);
+            indicatorMap.put("-st", TOLERANCE);
+            indicatorMap.put("-sm", SETTLE);
+            indicatorMap.put("-e", PRECISION);
+            indicatorMap.put("-em", MINIMUM);
+            indicatorMap.put("-o", OUTPUT);
+            indicatorMap.put("-lr", LOGRECORDS);
+            indicatorMap.put("-lt", LOGINTERVAL);
+            indicatorMap.put("-ls", LOGSYNC);
+            indicatorMap.put("-vna", VNA);
+            indicatorMap.put("-dmm", DMM);
+            indicatorMap.put("-mi", METRICS);
+            indicatorMap.put("-k", TRACKING);
+            indicatorMap.put("-kn", DENSITY);
+            indicatorMap.put("-cw", CW);
+            indicatorMap.put("-cwt", CWTIME);
+            indicatorMap.put("-dp", PERIOD);
         }
     }
 
@@ -22,21 +39,95 @@ class Parser {
                 try {
                     switch (Indicator.indicatorMap.get(args[i])) {
                         case CENTER:
-                            VectorNetworkAnalyzer.center = Double.parseDouble(args[++i]);
+                            StaticTest.vna.center = Double.parseDouble(args[++i]);
                             break;
                         case SPAN:
-                            VectorNetworkAnalyzer.span = Double.parseDouble(args[++i]);
+                            StaticTest.vna.span = Double.parseDouble(args[++i]);
                             break;
                         case REPETITION:
                             StaticTest.nRep = Integer.parseInt(args[++i]);
                             break;
                         case POINT:
-                            VectorNetworkAnalyzer.point = Integer.parseInt(args[++i]);
+                            StaticTest.vna.point = Integer.parseInt(args[++i]);
                             break;
                         case MEASUREMENT:
-                            VectorNetworkAnalyzer.measurement = args[++i].toUpperCase();
-                            if (!Arrays.asList("S11", "S21", "S12", "S22").contains(VectorNetworkAnalyzer.measurement))
+                            StaticTest.vna.measurement = args[++i].toUpperCase();
+                            List<String> measurements = Arrays.asList(StaticTest.vna.Measurements());
+                            for (String m : measurements)
+                                if (!Arrays.asList("S11", "S21", "S12", "S22").contains(m) || measurements.indexOf(m) != measurements.lastIndexOf(m))
+                                    throw new ArgumentException();
+                            break;
+                        case FORMAT:
+                            StaticTest.vna.format = args[++i].toUpperCase();
+                            if (!Arrays.asList("ASCII", "REAL32", "REAL64").contains(StaticTest.vna.format))
+                                throw new ArgumentException();
+                            break;
+                        case TOLERANCE:
+                            StaticTest.vna.tolerance = Double.parseDouble(args[++i]);
+                            break;
+                        case SETTLE:
+                            StaticTest.vna.settleMax = Double.parseDouble(args[++i]);
+                            break;
+                        case PRECISION:
+                            StaticTest.vna.precision = Double.parseDouble(args[++i]);
+                            break;
+                        case MINIMUM:
+                            StaticTest.vna.minSweeps = Integer.parseInt(args[++i]);
+                            break;
+                        case OUTPUT:
+                            StaticTest.output = args[++i].toUpperCase();
+                            if (!Arrays.asList("TEXT", "ARCHIVE").contains(StaticTest.output))
+                                throw new ArgumentException();
+                            break;
+                        case LOGRECORDS:
+                            SlowControlLog.records = Integer.parseInt(args[++i]);
+                            break;
+                        case LOGINTERVAL:
+                            SlowControlLog.interval = Integer.parseInt(args[++i]);
+                            break;
+                        case LOGSYNC:
+                            String sync = args[++i].toUpperCase();
+                            if (!Arrays.asList("ON", "OFF").contains(sync))
                                 throw new ArgumentException();
+                            SlowControlLog.sync = sync.equals("ON");
+                            break;
+                        case VNA:
+                            String[] vna = args[++i].split(":");
+                            StaticTest.vna.host = vna[0];
+                            if (vna.length > 1)
+                                StaticTest.vna.port = Integer.parseInt(vna[1]);
+                            break;
+                        case DMM:
+                            String[] dmm = args[++i].split(":");
+                            StaticTest.dmm.host = dmm[0];
+                            if (dmm.length > 1)
+                                StaticTest.dmm.port = Integer.parseInt(dmm[1]);
+                            break;
+                        case METRICS:
+                            PhaseMetrics.interval = Double.parseDouble(args[++i]);
+                            break;
+                        case TRACKING:
+                            ResonanceTracker.factor = Double.parseDouble(args[++i]);
+                            if (ResonanceTracker.factor < 0)
+                                throw new ArgumentException();
+                            break;
+                        case DENSITY:
+                            ResonanceTracker.density = Integer.parseInt(args[++i]);
+                            if (ResonanceTracker.density < 1)
+                                throw new ArgumentException();
+                            break;
+                        case CW:
+                            PhaseTracker.points = Integer.parseInt(args[++i]);
+                            if (PhaseTracker.points < 0)
+                                throw new ArgumentException();
+                            break;
+                        case CWTIME:
+                            PhaseTracker.time = Double.parseDouble(args[++i]);
+                            if (PhaseTracker.time <= 0)
+                                throw new ArgumentException();
+                            break;
+                        case PERIOD:
+                            TemperatureSampler.period = Double.parseDouble(args[++i]);
                             break;
                     }
                 } catch (ArrayIndexOutOfBoundsException e) {
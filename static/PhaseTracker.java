@@ -0,0 +1,114 @@
+import java.io.*;
+import java.util.*;
+
+// Drift of the resonance from the phase of zero-span sweeps at a fixed frequency. A full sweep locks
+// the continuous wave onto the fitted resonance and measures the loaded Q and the phase there; since
+// the transmission of the resonator is 1 / (1 + 2jQ (f - f0) / f0), a resonance moved by df turns the
+// phase by atan(2Q df / f0), so every sample gives f0 - f = f tan(dphi) / 2Q. The frequency follows
+// the resonance once it moved by `relock' widths, and the lock is renewed with a full sweep when the
+// magnitude fell below 1/sqrt(2) of the locked one. Every sample is written to `cw_track.dat' with the
+// temperature interpolated between the readings of the sampler around it.
+class PhaseTracker {
+    static int points = 0; // samples per segment, 0 = frequency sweeps
+    static double time = 1.; // s, duration of a segment
+    static final double relock = 0.25; // widths
+
+    String fname;
+    BufferedWriter writer;
+    long origin; // ns, monotonic time zero, the one of slow_control.dat
+    boolean locked = false;
+    double frequency, q, width; // MHz of the continuous wave, loaded Q, kHz
+    double reference, magnitude; // rad, phase and magnitude at the resonance when locked
+    int shifts = 0, losses = 0;
+
+    static boolean Enabled() {
+        return points > 0;
+    }
+
+    PhaseTracker(String fname, String settings, long origin) {
+        this.fname = fname;
+        this.origin = origin;
+        try {
+            writer = new BufferedWriter(new FileWriter(fname));
+            writer.write(settings);
+            writer.write("# monotonic time [s], resonant frequency [kHz], offset from the continuous wave [kHz], magnitude, phase [rad], temperature [deg C]\n");
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't create file `" + fname + "'.");
+            System.exit(1);
+        }
+    }
+
+    // lock onto the resonance fitted to a full sweep, returns false if the fit failed
+    boolean Lock(ResonanceFitter fit, double[] data, VectorNetworkAnalyzer rohde) throws InstrumentException {
+        VectorNetworkAnalyzer.Config vna = rohde.config;
+        if (Double.isNaN(fit.f0) || Math.abs(fit.f0 - 1e3 * vna.center) > vna.span/2) {
+            System.out.println("the resonance couldn't be locked, another sweep follows");
+            return false;
+        }
+
+        // complex value at the resonance, interpolated between the neighbouring points of the primary trace
+        int n = data.length / 2 / vna.Measurements().length;
+        int o = 2 * n * vna.Primary();
+        double x = (fit.f0 - 1e3 * vna.center + vna.span/2) / vna.span * (n - 1);
+        int i = Math.min(Math.max((int) x, 0), n - 2);
+        double a = x - i;
+        double re = (1 - a) * data[o+2*i] + a * data[o+2*i+2], im = (1 - a) * data[o+2*i+1] + a * data[o+2*i+3];
+
+        frequency = fit.f0 * 1e-3;
+        q = fit.q;
+        width = fit.fwhm;
+        reference = Math.atan2(im, re);
+        magnitude = Math.hypot(re, im);
+        rohde.ContinuousWave(frequency, points, time);
+        locked = true;
+        System.out.println(String.format("locked at %.3f kHz with a loaded Q of %.0f", fit.f0, q));
+        return true;
+    }
+
+    // samples of a segment which started at the given tick and lasted `sweep' ns until its completion
+    void Follow(double[] data, long start, long sweep, TemperatureSampler sampler, VectorNetworkAnalyzer rohde) throws InstrumentException {
+        VectorNetworkAnalyzer.Config vna = rohde.config;
+        int n = data.length / 2 / vna.Measurements().length;
+        int o = 2 * n * vna.Primary();
+        double offsetSum = 0., magnitudeSum = 0.;
+
+        try {
+            for (int k = 0; k < n; k++) {
+                long tick = start + (long) (sweep * (k + .5) / n);
+                double re = data[o+2*k], im = data[o+2*k+1];
+                double phase = Math.IEEEremainder(Math.atan2(im, re) - reference, 2 * Math.PI);
+                double offset = 1e3 * frequency * Math.tan(phase) / (2 * q); // kHz
+                double temperature = sampler.Temperature(tick);
+                writer.write(String.format(Locale.ROOT, "%.6f\t\t%.4f\t\t%.4f\t\t%.6e\t\t%.6f\t\t%.4f\n", (tick - origin) * 1e-9,
+                        1e3 * frequency + offset, offset, Math.hypot(re, im), phase, temperature));
+                offsetSum += offset;
+                magnitudeSum += Math.hypot(re, im);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't write to file `" + fname + "'.");
+            System.exit(1);
+        }
+
+        if (magnitudeSum / n < magnitude / Math.sqrt(2)) {
+            System.out.println("the resonance is lost, locking anew");
+            rohde.LinearSweep();
+            locked = false;
+            losses++;
+        } else if (Math.abs(offsetSum / n) > relock * width) {
+            frequency += offsetSum / n * 1e-3;
+            rohde.Shift(frequency);
+            shifts++;
+        }
+    }
+
+    void CleanUp() {
+        System.out.println(String.format("the continuous wave was shifted %d times and the resonance lost %d times", shifts, losses));
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+            System.exit(1);
+        }
+    }
+}
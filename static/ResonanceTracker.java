@@ -0,0 +1,83 @@
+import java.io.*;
+
+// Follows the drifting resonance during the static test. After every trace the fitted resonance
+// sets the window of the next sweep: `factor' times the width around the resonance, sampled with
+// `density' points per width. The window is only moved once the resonance left the middle quarter
+// of a width or the width changed noticeably, such that the analyzer isn't reconfigured on noise,
+// and it falls back to the initial window as soon as the fit fails or puts the resonance outside of
+// the window; a resonance near an edge is centered like any other. The window of every trace is
+// listed in `tracking.dat'.
+class ResonanceTracker {
+    static double factor = 0.; // span in widths of the resonance, 0 = fixed window
+    static int density = 20; // trace points per width
+    static final int minPoints = 51;
+
+    String fname;
+    BufferedWriter writer;
+    double initialCenter, initialSpan; // MHz, kHz
+    int initialPoint;
+    double width = Double.NaN; // kHz, width the current window was chosen for
+    int retunes = 0, losses = 0;
+
+    static boolean Enabled() {
+        return factor > 0;
+    }
+
+    ResonanceTracker(String fname, VectorNetworkAnalyzer.Config vna) {
+        this.fname = fname;
+        initialCenter = vna.center;
+        initialSpan = vna.span;
+        initialPoint = vna.point;
+        try {
+            writer = new BufferedWriter(new FileWriter(fname));
+            writer.write("# repetition, center frequency [MHz], span [kHz], number of trace points\n");
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't create file `" + fname + "'.");
+            System.exit(1);
+        }
+    }
+
+    // window of the trace just taken
+    void Record(String label, VectorNetworkAnalyzer.Config vna) {
+        try {
+            writer.write(label + "\t\t" + vna.center + "\t\t" + vna.span + "\t\t" + vna.point + '\n');
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't write to file `" + fname + "'.");
+            System.exit(1);
+        }
+    }
+
+    // window of the next sweep from the fit of the trace just taken
+    void Follow(ResonanceFitter fit, VectorNetworkAnalyzer rohde) throws InstrumentException {
+        VectorNetworkAnalyzer.Config vna = rohde.config;
+        double offset = fit.f0 - 1e3 * vna.center; // kHz
+        if (Double.isNaN(fit.f0) || Double.isNaN(fit.fwhm) || fit.fwhm <= 0 || Math.abs(offset) > vna.span/2) {
+            width = Double.NaN;
+            losses++;
+            if (vna.center != initialCenter || vna.span != initialSpan || vna.point != initialPoint) {
+                System.out.println("the resonance is lost, back to the initial window");
+                rohde.Retune(initialCenter, initialSpan, initialPoint);
+            }
+            return;
+        }
+        if (!Double.isNaN(width) && Math.abs(offset) < fit.fwhm/4 && Math.abs(fit.fwhm - width) < width/5)
+            return;
+
+        width = fit.fwhm;
+        double span = Math.min(factor * width, initialSpan);
+        int point = (int) Math.ceil(span / width * density) / 2 * 2 + 1; // odd, such that a point sits on the resonance
+        point = Math.min(Math.max(point, minPoints), initialPoint);
+        rohde.Retune(fit.f0 * 1e-3, span, point);
+        retunes++;
+    }
+
+    void CleanUp() {
+        System.out.println(String.format("the window was moved %d times and the resonance lost %d times", retunes, losses));
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Error! Couldn't close file `" + fname + "' properly.");
+            System.exit(1);
+        }
+    }
+}
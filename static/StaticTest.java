@@ -12,6 +12,15 @@ import java.text.*;
 public class StaticTest {
     static int nRep = 1;
     static String timestamp = "1970-01-01 00:00:00";
+    static String output = "TEXT"; // TEXT file per trace or one ARCHIVE
+    static VectorNetworkAnalyzer.Config vna = new VectorNetworkAnalyzer.Config();
+    static Multimeter.Config dmm = new Multimeter.Config();
+    static TraceRecorder recorder;
+    static SlowControlLog log;
+    static PhaseMetrics metrics;
+    static ResonanceTracker tracker = null;
+    static PhaseTracker stream = null;
+    static TemperatureSampler sampler;
 
     public static void main(String[] args) {
         try {
@@ -20,29 +29,112 @@ public class StaticTest {
             printHelp();
             System.exit(1);
         }
-        RecordSlowControl(23, true);
+        if ((ResonanceTracker.Enabled() || PhaseTracker.Enabled()) && !vna.Transmission()) {
+            System.err.println("Error! The resonance can only be tracked in a transmission.");
+            System.exit(1);
+        }
+        if (ResonanceTracker.Enabled() && PhaseTracker.Enabled()) {
+            System.err.println("Error! The window and the continuous wave can't both track the resonance.");
+            System.exit(1);
+        }
+        log = new SlowControlLog("slow_control.dat", Settings());
+        recorder = new TraceRecorder(output, Settings(), "repetition", vna);
+        sampler = new TemperatureSampler("temperature.dat", Settings(), log.start, false);
+        if (ResonanceTracker.Enabled())
+            tracker = new ResonanceTracker("tracking.dat", vna);
+        if (PhaseTracker.Enabled())
+            stream = new PhaseTracker("cw_track.dat", Settings(), log.start);
+        try {
+            Measure();
+        } catch (InstrumentException e) {
+            System.err.println("Error! " + e.getMessage());
+            sampler.CleanUp();
+            recorder.CleanUp(); // keep the traces measured so far
+            if (tracker != null)
+                tracker.CleanUp();
+            if (stream != null)
+                stream.CleanUp();
+            log.CleanUp();
+            System.exit(1);
+        }
+        metrics.CleanUp();
+        sampler.CleanUp();
+        recorder.CleanUp();
+        if (tracker != null)
+            tracker.CleanUp();
+        if (stream != null)
+            stream.CleanUp();
+        log.CleanUp();
+    }
 
-        VectorNetworkAnalyzer rohde = new VectorNetworkAnalyzer(); // s-parameter measurement
-        Multimeter agilent = new Multimeter(); // temperature monitoring
+    static void Measure() throws InstrumentException {
+        VectorNetworkAnalyzer rohde = new VectorNetworkAnalyzer(vna); // s-parameter measurement
+        Multimeter agilent = new Multimeter(dmm); // temperature monitoring
         DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         Calendar rightNow = Calendar.getInstance();
-        String begin = dateFormat.format(rightNow.getTime());
-        rightNow.add(Calendar.SECOND, 10*nRep);
-        String end = dateFormat.format(rightNow.getTime());
-        System.out.println("measurement begins at " + begin);
-        System.out.println("It will approximately end around " + end);
+        System.out.println("measurement begins at " + dateFormat.format(rightNow.getTime()));
+        metrics = new PhaseMetrics("metrics.dat", nRep);
+        sampler.metrics = metrics;
+        sampler.Start(agilent);
 
-        for (int i = 0; i < nRep; i++) {
-            System.out.println(String.format("%05d", nRep-i-1));
-            rightNow = Calendar.getInstance();
-            timestamp = dateFormat.format(rightNow.getTime());
-            RecordSlowControl(agilent.FetchData(), false);
-            RecordTrace(i, rohde.FetchData());
+        if (stream != null)
+            Stream(rohde);
+        else {
+            for (int i = 0; i < nRep; i++) {
+                System.out.println(String.format("%05d", nRep-i-1));
+                rightNow = Calendar.getInstance();
+                timestamp = dateFormat.format(rightNow.getTime());
+                long tick = System.nanoTime();
+                double[] data = rohde.FetchData();
+                metrics.Record(rohde);
+                double temperature = sampler.Temperature(System.nanoTime() - (long) (rohde.sweepTime * 5e8)); // middle of the sweep
+                long written = System.nanoTime();
+                log.Record(timestamp, temperature, 0., rohde.sweepTime, tick);
+                recorder.Trace(String.format("%05d.dat", i), 0, i, 0, System.currentTimeMillis(), temperature, data);
+                recorder.Resonance(String.format("%05d", i), data);
+                metrics.Record(PhaseMetrics.Phase.WRITE, System.nanoTime() - written);
+                if (tracker != null) {
+                    tracker.Record(String.format("%05d", i), vna);
+                    tracker.Follow(recorder.fitter, rohde);
+                }
+                metrics.Point();
+            }
         }
+        sampler.Stop();
         rohde.CleanUp();
         agilent.CleanUp();
     }
 
+    // segments of zero-span sweeps at the resonance, locked with a full sweep at first and whenever it got lost
+    static void Stream(VectorNetworkAnalyzer rohde) throws InstrumentException {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        for (int i = 0; i < nRep; i++) {
+            System.out.println(String.format("%05d", nRep-i-1));
+            timestamp = dateFormat.format(Calendar.getInstance().getTime());
+            if (!stream.locked) {
+                double[] data = rohde.FetchData();
+                metrics.Record(rohde);
+                double temperature = sampler.Temperature(System.nanoTime() - (long) (rohde.sweepTime * 5e8));
+                recorder.Trace(String.format("%05d.dat", i), 0, i, 0, System.currentTimeMillis(), temperature, data);
+                recorder.Resonance(String.format("%05d", i), data);
+                if (!stream.Lock(recorder.fitter, data, rohde)) {
+                    metrics.Point();
+                    continue;
+                }
+            }
+
+            double[] data = rohde.FetchStream(i < nRep-1); // the next segment runs while this one is written
+            metrics.Record(rohde);
+            long written = System.nanoTime();
+            long start = rohde.sweepStart, sweep = Math.min(rohde.sweepEnd - rohde.sweepStart, (long) (PhaseTracker.time * 1e9));
+            log.Record(timestamp, sampler.Temperature(start + sweep/2), 0., sweep * 1e-9, start);
+            stream.Follow(data, start, sweep, sampler, rohde);
+            metrics.Record(PhaseMetrics.Phase.WRITE, System.nanoTime() - written);
+            metrics.Point();
+        }
+    }
+
     static void printHelp() {
         System.err.println("+-----------+\n|   USAGE   |\n+-----------+");
         System.err.println("The program measures s-parameters of a cavity and logs ambient temperature" +
@@ -51,78 +143,45 @@ public class StaticTest {
                 "\n-s\tspan in kHz" +
                 "\n-r\trepetition of measurements" +
                 "\n-n\tnumber of trace points" +
-                "\n-t\ttype of measurement, select from {S11, S21, S12, S22}" +
+                "\n-t\ttypes of measurement separated by commas, all taken in the same sweep, select from {S11, S21, S12, S22}" +
+                "\n-f\tformat of trace transfer, select from {ASCII, REAL32, REAL64}" +
+                "\n-st\ttolerance of the resonance in kHz for settling with quick sweeps (0 means a fixed pause)" +
+                "\n-sm\tmaximum settling time in s" +
+                "\n-e\tstandard error of the resonance in kHz for averaging single sweeps on the host (0 means averaging on the analyzer)" +
+                "\n-em\tminimum number of sweeps averaged on the host" +
+                "\n-o\toutput of traces, select from {TEXT, ARCHIVE}" +
+                "\n-lr\tnumber of lines after which slow_control.dat is flushed" +
+                "\n-lt\tinterval in ms after which slow_control.dat is flushed" +
+                "\n-ls\tforce slow_control.dat to the disk on every flush, select from {ON, OFF}" +
+                "\n-vna\taddress of the vector network analyzer as host:port" +
+                "\n-dmm\taddress of the multimeter as host:port" +
+                "\n-dp\tperiod in s of the temperature readings, taken aside of the sweeps and logged in temperature.dat" +
+                "\n-mi\tinterval in s between summaries of the latencies, also written to metrics.dat (0 means only at the end)" +
+                "\n-k\tspan in widths of the resonance for tracking it from trace to trace, listed in tracking.dat (0 means a fixed window)" +
+                "\n-kn\tnumber of trace points per width of the resonance when tracking, at most the one of -n" +
+                "\n-cw\tnumber of samples per segment of zero-span sweeps at the resonance, whose phase gives its drift in cw_track.dat (0 means frequency sweeps)" +
+                "\n-cwt\tduration of a segment of zero-span sweeps in s" +
                 "\n\ndefault setting is equivalent to:" +
-                "\njava -jar StaticTest.jar -c 682 -s 150 -r 1 -n 801 -t S21");
+                "\njava -jar StaticTest.jar -c 682 -s 150 -r 1 -n 801 -t S21 -f ASCII -st 0 -sm 10 -e 0 -em 2 -o TEXT -lr 10 -lt 5000 -ls ON -vna 192.168.254.2:5025 -dmm 192.168.254.4:5025 -mi 60 -k 0 -kn 20 -cw 0 -cwt 1 -dp 1");
     }
 
-    static void RecordSlowControl(double temperature, boolean initial) {
-        FileWriter f = null;
-        try {
-            if (initial)
-                f = new FileWriter("slow_control.dat"); // write to a new file
-            else
-                f = new FileWriter("slow_control.dat", true); // append to the existing file
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't create file `slow_control.dat'.");
-            System.exit(1);
-        } 
-
-        if (initial) {
-            try {
-                f.write("# number of repetitions                    " + nRep + '\n' +
-                        "# number of trace points                   " + VectorNetworkAnalyzer.point + '\n' +
-                        "# center frequency [MHz]                   " + VectorNetworkAnalyzer.center + '\n' +
-                        "# span [kHz]                               " + VectorNetworkAnalyzer.span + '\n' +
-                        "# power [dBm]                              " + VectorNetworkAnalyzer.power + '\n' +
-                        "# number of acquisitions for average       " + VectorNetworkAnalyzer.average + '\n' +
-                        "# bandwidth of intermediate filter [kHz]   " + VectorNetworkAnalyzer.bandwidth + '\n' +
-                        "# type of measurement                      " + VectorNetworkAnalyzer.measurement + '\n');
-            } catch (IOException e) {
-                System.err.println("Error! Couldn't write to file `slow_control.dat'.");
-                System.exit(1);
-            }
-        } else {
-            try {
-                f.write(timestamp + "\t\t" + temperature + '\n');
-            } catch (IOException e) {
-                System.err.println("Error! Couldn't write to file `slow_control.dat'.");
-                System.exit(1);
-            }
-        }
-
-        try {
-            f.close();
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't close file `slow_control.dat' properly.");
-            System.exit(1);
-        }
-    }
-
-    static void RecordTrace(int fileNum, String[] data) {
-        FileWriter f = null;
-        String fname = "";
-        try {
-            fname = String.format("%05d.dat", fileNum);
-            f = new FileWriter(fname);
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't create file `" + fname + "'.");
-            System.exit(1);
-        }
-
-        try {
-            for (int i = 0; i < data.length/2; i++)
-                f.write(data[2*i] + "\t\t" + data[2*i+1] + '\n'); // real, imaginary
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't write to file `" + fname + "'.");
-            System.exit(1);
-        }
-
-        try {
-            f.close();
-        } catch (IOException e) {
-            System.err.println("Error! Couldn't close file `" + fname + "' properly.");
-            System.exit(1);
-        }
+    static String Settings() {
+        return "# number of repetitions                    " + nRep + '\n' +
+                "# number of trace points                   " + vna.point + '\n' +
+                "# center frequency [MHz]                   " + vna.center + '\n' +
+                "# span [kHz]                               " + vna.span + '\n' +
+                "# power [dBm]                              " + vna.power + '\n' +
+                "# number of acquisitions for average       " + vna.average + '\n' +
+                "# bandwidth of intermediate filter [kHz]   " + vna.bandwidth + '\n' +
+                "# type of measurement                      " + vna.measurement + '\n' +
+                "# format of trace transfer                 " + vna.format + '\n' +
+                "# tolerance of settling [kHz]              " + vna.tolerance + '\n' +
+                "# precision of averaging on host [kHz]     " + vna.precision + '\n' +
+                "# output of traces                         " + output + '\n' +
+                "# tracking span [FWHM]                     " + ResonanceTracker.factor + '\n' +
+                "# trace points per FWHM when tracking      " + ResonanceTracker.density + '\n' +
+                "# samples per segment of continuous wave   " + PhaseTracker.points + '\n' +
+                "# duration of a segment [s]                " + PhaseTracker.time + '\n' +
+                "# period of temperature readings [s]       " + TemperatureSampler.period + '\n';
     }
 }
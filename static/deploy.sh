@@ -1,4 +1,4 @@
 #!/bin/bash
 
-javac StaticTest.java
+javac -sourcepath .:../common -d . StaticTest.java
 jar cvfm StaticTest.jar Manifest *.class